@@ -5,61 +5,306 @@
  */
 
 import java.io.*;
-import java.util.Scanner;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Lex {
+	// External mode defaults: lines sorted in memory per run, and runs
+	// merged at once
+	static final int DEFAULT_RUN_LINES = 1 << 20;
+	static final int DEFAULT_FAN_IN = 64;
+
+	// Bytes buffered per run file while spilling and merging
+	static final int RUN_BUFFER = 1 << 16;
+
 	public static void main(String args[]) throws IOException {
-		Scanner input = null;
+		BufferedReader input = null;
 		PrintWriter output = null;
-		List list = new List();
+		List list = null;
 		ArrayList<String> lines = new ArrayList<String>();
+		int runLines = 0, fanIn = DEFAULT_FAN_IN;
+
+		// Options turn on external mode, for inputs too big for memory
+		int arg = 0;
+		try {
+			for (; arg + 2 < args.length && args[arg].startsWith("-"); arg += 2) {
+				if (args[arg].equals("-r")) {
+					runLines = Integer.parseInt(args[arg + 1]);
+				}
+				else if (args[arg].equals("-f")) {
+					fanIn = Integer.parseInt(args[arg + 1]);
+					runLines = runLines == 0 ? DEFAULT_RUN_LINES : runLines;
+				}
+				else {
+					usage();
+				}
+			}
+		}
+		catch (NumberFormatException e) {
+			usage();
+		}
 
 		// Check for useage
-		if (args.length != 2) {
-			System.out.println("Usage: infile outfile");
-			System.exit(-1);
+		if (args.length - arg != 2 || runLines < 0 || fanIn < 2) {
+			usage();
 		}
 
-		// Setup input/output
-		input = new Scanner(new File(args[0]));
-		output = new PrintWriter(new FileWriter(args[1]));
+		// Setup input/output. Both modes read lines the same way, in the
+		// charset FileWriter writes them back out in.
+		input = Files.newBufferedReader(Paths.get(args[arg]), Charset.defaultCharset());
+		output = new PrintWriter(new FileWriter(args[arg + 1]));
 
-		// Read in the input
-		while (input.hasNextLine()) {
-			lines.add(input.nextLine());
+		if (runLines > 0) {
+			externalSort(input, output, runLines, fanIn);
 		}
+		else {
+			// Read in the input
+			for (String line; (line = input.readLine()) != null; ) {
+				lines.add(line);
+			}
 
-		// Iterate through the lines
-		for (int i = 0; i < lines.size(); i++) {
+			// Sort the line numbers by their lines. Equal lines keep their
+			// input order, as they did when each line was inserted after
+			// the ones it was not less than.
+			list = sortedOrder(lines);
 
-			// Start each iteration at the front
-			list.moveFront();
+			// Print it out
+			for (int i : list) {
+				output.println(lines.get(i));
+			}
+		}
 
-			// Scrub the list to where the line belongs
-			while (list.index() != -1 
-					&& lines.get(i).compareTo(lines.get(list.get())) >= 0) {
-				list.moveNext();
+		// Clean up
+		input.close();
+		output.close();
+	}
+
+	private static void usage() {
+		System.out.println("Usage: [-r run_lines] [-f fan_in] infile outfile");
+		System.exit(-1);
+	}
+
+	// The line numbers of lines in sorted order, equal lines in input order
+	static List sortedOrder(ArrayList<String> lines) {
+		String keys[] = lines.toArray(new String[0]);
+		int order[] = new int[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		ForkJoinPool.commonPool().invoke(
+				new IndexSort(keys, order, new int[order.length], 0, order.length));
+		return new PackedList(order);
+	}
+
+	// Sorts input to output holding only runLines lines in memory at once.
+	// Each run is sorted and spilled to a temporary file, then the runs
+	// are merged fanIn at a time, in passes if there are more than that.
+	// The output is the same as sorting in memory: runs are cut and
+	// merged in input order, and ties between runs go to the earlier one.
+	static void externalSort(BufferedReader input, PrintWriter output, int runLines, int fanIn)
+			throws IOException {
+		ArrayList<Path> runs = new ArrayList<Path>(), spilled = new ArrayList<Path>();
+		try {
+			ArrayList<String> lines = new ArrayList<String>();
+			String line = input.readLine();
+			while (line != null) {
+				lines.add(line);
+				line = input.readLine();
+				if (lines.size() == runLines || line == null) {
+					Path run = newRun(spilled);
+					PrintWriter out = runWriter(run);
+					for (int i : sortedOrder(lines)) {
+						out.println(lines.get(i));
+					}
+					closeRun(out, run);
+					runs.add(run);
+					lines.clear();
+				}
+			}
+
+			// Merge neighbouring groups until one merge can finish the job
+			while (runs.size() > fanIn) {
+				ArrayList<Path> merged = new ArrayList<Path>();
+				for (int from = 0; from < runs.size(); from += fanIn) {
+					int to = Math.min(from + fanIn, runs.size());
+					Path run = newRun(spilled);
+					PrintWriter out = runWriter(run);
+					merge(runs, from, to, out);
+					closeRun(out, run);
+					merged.add(run);
+					for (int i = from; i < to; i++) {
+						Files.delete(runs.get(i));
+					}
+				}
+				runs = merged;
+			}
+			merge(runs, 0, runs.size(), output);
+		}
+		finally {
+			for (Path run : spilled) {
+				Files.deleteIfExists(run);
 			}
+		}
+	}
+
+	private static Path newRun(ArrayList<Path> spilled) throws IOException {
+		Path run = Files.createTempFile("lex", ".run");
+		spilled.add(run);
+		return run;
+	}
+
+	private static PrintWriter runWriter(Path run) throws IOException {
+		FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE);
+		return new PrintWriter(new BufferedWriter(
+				Channels.newWriter(channel, StandardCharsets.UTF_8), RUN_BUFFER));
+	}
 
-			// If the index went off, then append the word
-			if (list.index() == -1) {
-				list.append(i);
+	// PrintWriter keeps write errors to itself, so check before trusting
+	// the run
+	private static void closeRun(PrintWriter out, Path run) throws IOException {
+		out.close();
+		if (out.checkError()) {
+			throw new IOException("could not write " + run);
+		}
+	}
+
+	// Merges runs[from, to) into out through a heap of their next lines
+	private static void merge(ArrayList<Path> runs, int from, int to, PrintWriter out)
+			throws IOException {
+		PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(Math.max(1, to - from));
+		try {
+			for (int i = from; i < to; i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				if (reader.line != null) {
+					heap.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+			while (!heap.isEmpty()) {
+				RunReader reader = heap.poll();
+				out.println(reader.line);
+				if (reader.advance()) {
+					heap.add(reader);
+				}
+				else {
+					reader.close();
+				}
 			}
+		}
+		finally {
+			for (RunReader reader : heap) {
+				reader.close();
+			}
+		}
+	}
+
+	// The next line of a run, ordered by line and then by the run's place
+	// in the input
+	private static class RunReader implements Comparable<RunReader> {
+		final BufferedReader reader;
+		final int order;
+		String line;
+
+		RunReader(Path run, int order) throws IOException {
+			FileChannel channel = FileChannel.open(run, StandardOpenOption.READ);
+			this.reader = new BufferedReader(
+					Channels.newReader(channel, StandardCharsets.UTF_8), RUN_BUFFER);
+			this.order = order;
+			advance();
+		}
+
+		boolean advance() throws IOException {
+			line = reader.readLine();
+			return line != null;
+		}
+
+		void close() throws IOException {
+			reader.close();
+		}
 
-			// Otherwise insert it before the word we're at
-			else {
-				list.insertBefore(i);
+		public int compareTo(RunReader other) {
+			int c = line.compareTo(other.line);
+			return c != 0 ? c : Integer.compare(order, other.order);
+		}
+	}
+
+	// Stable merge sort of index[low, high) by keys, splitting into forked
+	// halves until they are small enough to sort on one thread. buffer is
+	// scratch space as long as index.
+	private static class IndexSort extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		static final int FORK_LIMIT = 8192;
+		static final int INSERTION_LIMIT = 16;
+
+		final String keys[];
+		final int index[], buffer[];
+		final int low, high;
+
+		IndexSort(String keys[], int index[], int buffer[], int low, int high) {
+			this.keys = keys;
+			this.index = index;
+			this.buffer = buffer;
+			this.low = low;
+			this.high = high;
+		}
+
+		protected void compute() {
+			if (high - low <= FORK_LIMIT) {
+				sort(low, high);
+				return;
 			}
+			int middle = (low + high) >>> 1;
+			invokeAll(new IndexSort(keys, index, buffer, low, middle),
+					new IndexSort(keys, index, buffer, middle, high));
+			merge(low, middle, high);
 		}
 
-		// Print it out
-		for (int i : list) {
-			output.println(lines.get(i));
+		private void sort(int from, int to) {
+			if (to - from <= INSERTION_LIMIT) {
+				for (int i = from + 1; i < to; i++) {
+					int moving = index[i], j = i;
+					for (; j > from && keys[moving].compareTo(keys[index[j - 1]]) < 0; j--) {
+						index[j] = index[j - 1];
+					}
+					index[j] = moving;
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			sort(from, middle);
+			sort(middle, to);
+			merge(from, middle, to);
 		}
 
-		// Clean up
-		input.close();
-		output.close();
+		// Merges the sorted runs [from, middle) and [middle, to), taking
+		// from the left on ties
+		private void merge(int from, int middle, int to) {
+			if (keys[index[middle - 1]].compareTo(keys[index[middle]]) <= 0) {
+				return;
+			}
+			System.arraycopy(index, from, buffer, from, middle - from);
+			int i = from, j = middle, k = from;
+			while (i < middle && j < to) {
+				if (keys[index[j]].compareTo(keys[buffer[i]]) < 0) {
+					index[k++] = index[j++];
+				}
+				else {
+					index[k++] = buffer[i++];
+				}
+			}
+			System.arraycopy(buffer, i, index, k, middle - i);
+		}
 	}
 }
@@ -4,13 +4,59 @@
  * Copyright (C) 2017, Spencer Peterson
  */
 
+import java.io.IOException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public class List implements Iterable<Integer> {
 
 	int prevCount = 0, nextCount = 0;
 	Node current = null, front = null, back = null;
 
+	// Copies share their nodes until one of them relinks a node. owners
+	// counts the lists sharing this list's nodes; see unshare().
+	AtomicInteger owners = new AtomicInteger(1);
+
+	// Characters writeTo() collects before handing them to its output
+	static final int WRITE_BATCH = 8192;
+
+	// moveTo() walks this far before building the index
+	static final int WALK_LIMIT = 32;
+
+	// Skip list over the nodes for positional access, built by buildIndex()
+	// or the first time moveTo() has to go far and kept up to date by every
+	// edit after that. Level 1 links roughly every second node, each level above
+	// every second one of the level below, and width counts the nodes
+	// stepped over to reach right. head is the top level's head, standing
+	// just before the front at index -1, or null while there is no index.
+	class IndexNode {
+		Node node;
+		IndexNode right, down;
+		int width;
+
+		IndexNode(Node node, IndexNode down) {
+			this.node = node;
+			this.down = down;
+		}
+	}
+
+	IndexNode head = null;
+	int levels = 0;
+
+	// Unlinked nodes kept for later inserts, chained through next. Off
+	// unless setPoolLimit() is called, and only ever holds nodes no copy
+	// shares.
+	Node pool = null;
+	int poolSize = 0, poolLimit = 0;
+
 	// Node object for data
 	class Node {
 		public Node next = null, prev = null;
@@ -22,6 +68,11 @@ public class List implements Iterable<Integer> {
 	}
 
 
+	// Orders two ints for sort(), like a Comparator without the boxing
+	public interface IntComparator {
+		int compare(int a, int b);
+	}
+
 	// Constructors
 	public List() {}
 
@@ -31,12 +82,24 @@ public class List implements Iterable<Integer> {
 	}
 
 	public List(List toCopy) {
-		// To copy a list, we'll concat to the new array the old array
-		concat(toCopy);
+		// Share toCopy's nodes rather than appending each one. The copy
+		// starts with its cursor on the front, as if it had been appended.
+		// Other kinds of list are copied through forEachInt().
+		if (!linked(toCopy)) {
+			toCopy.forEachInt(this::append);
+		}
+		else if (toCopy.length() > 0) {
+			toCopy.owners.incrementAndGet();
+			owners = toCopy.owners;
+			front = toCopy.front;
+			back = toCopy.back;
+			current = front;
+			nextCount = toCopy.length();
+		}
 	}
 
 	public List copy() {
-		// Copy function uses constructor
+		// Copy function uses constructor, so it is O(1)
 		return new List(this);
 	}
 
@@ -81,25 +144,42 @@ public class List implements Iterable<Integer> {
 		}
 	}
 
+	// Returns the element at index i without moving the cursor. Never
+	// changes the list, so several threads may call it at once. O(log n)
+	// while the list has an index, and a walk from the nearest of the
+	// cursor and the ends otherwise.
+	public int get(int i) {
+		if (i < 0 || i >= length()) {
+			throw new IndexOutOfBoundsException("get() index out of range");
+		}
+		return nodeAt(i, false).data;
+	}
+
+	// Builds the index get(int) uses, if there isn't one, in O(n). Edits
+	// at the cursor keep it up to date, while clear(), sort(), the calls
+	// that move nodes between lists and the first edit of a copy drop it.
+	// Call before sharing the list with reading threads.
+	public void buildIndex() {
+		if (head == null) {
+			makeIndex();
+		}
+	}
+
 	public boolean equals(List L) {
 		// Lists of different lengths are never equal
 		if (L.length() != length()) {
 			return false;
 		}
 
-		// Scrub both to front
-		moveFront();
-		L.moveFront();
-
-		while(index() >= 0) {
+		// Walk this list's nodes directly and L through its iterator, so
+		// neither cursor moves and any kind of list compares
+		PrimitiveIterator.OfInt b = L.intIterator();
+		Node a = front;
+		for (int i = 0; i < length(); i++, a = a.next) {
 			// Early exit if any are not equal
-			if (get() != L.get()) {
+			if (a.data != b.nextInt()) {
 				return false;
 			}
-
-			// next
-			moveNext();
-			L.moveNext();
 		}
 
 		// Everything was equal
@@ -113,12 +193,12 @@ public class List implements Iterable<Integer> {
 			return false;
 		}
 
-		moveFront();
+		Node node = front;
 		for (int i : data) {
-			if (i != get()) {
+			if (i != node.data) {
 				return false;
 			}
-			moveNext();
+			node = node.next;
 		}
 
 		return true;
@@ -127,10 +207,35 @@ public class List implements Iterable<Integer> {
 
 	// Mutability
 	public void clear() {
-		// TODO this probably leaks memory
+		// Hand the whole chain to the pool in one go if it fits, or leave it
+		// to the garbage collector. Either way drop the ends, so nothing
+		// stale is left.
+		dropIndex();
+		if (length() > 0 && owners.get() == 1 && poolSize + length() <= poolLimit) {
+			front.prev = null;
+			back.next = pool;
+			pool = front;
+			poolSize += length();
+		}
 		prevCount = 0;
 		nextCount = 0;
 		current = null;
+		front = null;
+		back = null;
+	}
+
+	// Keeps up to limit deleted nodes for reuse by later inserts, which
+	// saves churn-heavy lists an allocation per insert. 0, the default,
+	// turns pooling off and lets go of the pooled nodes.
+	public void setPoolLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("pool limit must not be negative");
+		}
+		poolLimit = limit;
+		while (poolSize > limit) {
+			pool = pool.next;
+			poolSize--;
+		}
 	}
 
 	public void moveFront() {
@@ -149,9 +254,19 @@ public class List implements Iterable<Integer> {
 		nextCount = 1;
 	}
 
+	// Moves the cursor to index i in O(log n)
+	public void moveTo(int i) {
+		if (i < 0 || i >= length()) {
+			throw new IndexOutOfBoundsException("moveTo() index out of range");
+		}
+		current = nodeAt(i, true);
+		nextCount = length() - i;
+		prevCount = i;
+	}
+
 	public void movePrev() {
 		if (current != null) {
-			current = current.prev;
+			current = current == front ? null : current.prev;
 			prevCount--;
 			nextCount++;
 		}
@@ -159,7 +274,7 @@ public class List implements Iterable<Integer> {
 
 	public void moveNext() {
 		if (current != null) {
-			current = current.next;
+			current = current == back ? null : current.next;
 			prevCount++;
 			nextCount--;
 		}
@@ -170,10 +285,12 @@ public class List implements Iterable<Integer> {
 			createCurrent(data);
 		}
 		else {
-			front.prev = new Node(data);
+			unshare();
+			front.prev = obtain(data);
 			front.prev.next = front;
 			front = front.prev;
 			prevCount++;
+			indexInsert(0, front);
 		}
 	}
 
@@ -182,10 +299,12 @@ public class List implements Iterable<Integer> {
 			createCurrent(data);
 		}
 		else {
-			back.next = new Node(data);
+			unshare();
+			back.next = obtain(data);
 			back.next.prev = back;
 			back = back.next;
 			nextCount++;
+			indexInsert(length() - 1, back);
 		}
 	}
 
@@ -194,8 +313,12 @@ public class List implements Iterable<Integer> {
 			createCurrent(data);
 		}
 		else {
-			Node tmp = current.prev;
-			current.prev = new Node(data);
+			unshare();
+
+			// deleteFront() leaves the old link in place, so only trust
+			// prev when this isn't the front
+			Node tmp = current == front ? null : current.prev;
+			current.prev = obtain(data);
 			current.prev.prev = tmp;
 
 			// If the previous value exists, correct its next
@@ -208,6 +331,7 @@ public class List implements Iterable<Integer> {
 			}
 
 			current.prev.next = current;
+			indexInsert(prevCount, current.prev);
 			prevCount++;
 		}
 	}
@@ -217,8 +341,11 @@ public class List implements Iterable<Integer> {
 			createCurrent(data);
 		}
 		else {
-			Node tmp = current.next;
-			current.next = new Node(data);
+			unshare();
+
+			// Likewise deleteBack() leaves next behind the back
+			Node tmp = current == back ? null : current.next;
+			current.next = obtain(data);
 			current.next.next = tmp;
 
 			// If next value exists, correct its prev
@@ -232,6 +359,7 @@ public class List implements Iterable<Integer> {
 
 			current.next.prev = current;
 			nextCount++;
+			indexInsert(prevCount + 1, current.next);
 		}
 	}
 
@@ -239,17 +367,28 @@ public class List implements Iterable<Integer> {
 		if (length() <= 0) {
 			throw new IndexOutOfBoundsException("deleteFront() from empty list");
 		}
+		indexDelete(0);
 
 		// Clear current if it's the front
-		if (current == front) {
+		boolean wasCurrent = current == front;
+		if (wasCurrent) {
 			current = null;
 		}
 
-		// Move front
-		front = front.next;
+		// Move front, emptying the list if it was the only node
+		Node old = front;
+		front = front == back ? null : front.next;
+		if (front == null) {
+			back = null;
+		}
+		else if (owners.get() == 1) {
+			front.prev = null;
+		}
+		recycle(old);
 
-		// Update counts
-		if (front == current) {
+		// Update counts. The front was behind the cursor unless it was
+		// the cursor itself, or there is no cursor to be behind.
+		if (wasCurrent || current == null) {
 			nextCount--;
 		}
 		else {
@@ -261,14 +400,23 @@ public class List implements Iterable<Integer> {
 		if (length() <= 0) {
 			throw new IndexOutOfBoundsException("deleteBack() from empty list");
 		}
+		indexDelete(length() - 1);
 
 		// Clear current if necessary
 		if (current == back) {
 			current = null;
 		}
 
-		// Update back
-		back = back.prev;
+		// Update back, emptying the list if it was the only node
+		Node old = back;
+		back = back == front ? null : back.prev;
+		if (back == null) {
+			front = null;
+		}
+		else if (owners.get() == 1) {
+			back.next = null;
+		}
+		recycle(old);
 
 		// Remove nextcount (back is always next)
 		nextCount--;
@@ -278,27 +426,32 @@ public class List implements Iterable<Integer> {
 		if (length() <= 0 || length() < 0) {
 			throw new IndexOutOfBoundsException("deleteBack() from empty list");
 		}
-		// Close previous
-		if (current.prev != null) {
-			current.prev.next = current.next;
-		}
+		unshare();
 
-		// Close next
-		if (current.next != null) {
-			current.next.prev = current.prev;
-		}
+		// The ends may still hold links to deleted nodes, so don't
+		// follow them
+		Node prev = current == front ? null : current.prev;
+		Node next = current == back ? null : current.next;
+		indexDelete(prevCount);
 
-		// Update front if necessary
-		if (current == front) {
-			front = current.next;
+		// Close previous, or update front if this was it
+		if (prev != null) {
+			prev.next = next;
+		}
+		else {
+			front = next;
 		}
 
-		// Update back if necessary
-		if (current == back) {
-			back = current.prev;
+		// Close next, or update back if this was it
+		if (next != null) {
+			next.prev = prev;
+		}
+		else {
+			back = prev;
 		}
 
 		// Clear current
+		recycle(current);
 		current = null;
 
 		// Current was 'next' so decrease nextcount
@@ -314,60 +467,519 @@ public class List implements Iterable<Integer> {
 
 	// Concatenates a list onto this list
 	public void concat(List l) {
-		for (int d : l) {
-			append(d);
+		l.forEachInt(this::append);
+	}
+
+	// Moves all of other's elements in after the cursor, leaving other
+	// empty. Relinks the nodes in O(1) rather than copying them, unless
+	// either list still shares its nodes with a copy or other keeps its
+	// elements some other way. The cursor stays on the same element.
+	public void spliceAfterCursor(List other) {
+		if (other == this) {
+			throw new IllegalArgumentException("spliceAfterCursor() of a list into itself");
+		}
+		if (other.length() == 0) {
+			return;
+		}
+		if (length() == 0) {
+			moveAll(other);
+			return;
+		}
+		if (current == null) {
+			throw new IndexOutOfBoundsException("spliceAfterCursor() from null cursor");
+		}
+
+		List source = nodesOf(other);
+		unshare();
+		source.unshare();
+		dropIndex();
+		Node after = current == back ? null : current.next;
+		current.next = source.front;
+		source.front.prev = current;
+		source.back.next = after;
+		if (after != null) {
+			after.prev = source.back;
+		}
+		else {
+			back = source.back;
+		}
+		nextCount += source.length();
+		source.forget();
+		other.clear();
+	}
+
+	// Cuts the list after the cursor and returns the tail, in O(1) unless
+	// the list still shares its nodes with a copy. The cursor ends up on
+	// the back of this list, and on the front of the tail.
+	public List splitAtCursor() {
+		if (current == null) {
+			throw new IndexOutOfBoundsException("splitAtCursor() from null cursor");
+		}
+		List tail = new List();
+		if (current == back) {
+			return tail;
+		}
+
+		unshare();
+		dropIndex();
+		tail.front = current.next;
+		tail.back = back;
+		tail.front.prev = null;
+		tail.current = tail.front;
+		tail.nextCount = nextCount - 1;
+		current.next = null;
+		back = current;
+		nextCount = 1;
+		return tail;
+	}
+
+	// Moves all of other's elements onto the back, leaving other empty, in
+	// O(1) under the same conditions as spliceAfterCursor(). An empty list
+	// ends up with its cursor on the front, as if they had been appended.
+	public void moveAll(List other) {
+		if (other == this) {
+			throw new IllegalArgumentException("moveAll() of a list into itself");
+		}
+		if (other.length() == 0) {
+			return;
+		}
+
+		List source = nodesOf(other);
+		unshare();
+		source.unshare();
+		dropIndex();
+		if (length() == 0) {
+			front = source.front;
+			front.prev = null;
+			current = front;
+			prevCount = 0;
+			nextCount = 0;
+		}
+		else {
+			back.next = source.front;
+			source.front.prev = back;
+		}
+		back = source.back;
+		back.next = null;
+		nextCount += source.length();
+		source.forget();
+		other.clear();
+	}
+
+	// Sorts the list into ascending order
+	public void sort() {
+		sort(Integer::compare);
+	}
+
+	// Sorts the list by order with a stable bottom-up merge sort, in
+	// O(n log n). The existing nodes are relinked rather than copied, so
+	// nothing is allocated past a small array of run heads, unless the
+	// list first has to stop sharing its nodes with a copy. The cursor
+	// stays on the same element.
+	public void sort(IntComparator order) {
+		if (length() < 2) {
+			return;
+		}
+		unshare();
+		dropIndex();
+
+		// Bottom-up, but in one pass over the list: runs[k] holds a sorted
+		// run of 2^k nodes, and each node carries up through the full
+		// slots like a binary counter, merging as it goes. This keeps the
+		// merges on recently touched nodes, instead of walking the whole
+		// list once per run width.
+		Node runs[] = new Node[32];
+		int top = 0;
+		back.next = null;
+		for (Node node = front; node != null; ) {
+			Node run = node;
+			node = node.next;
+			run.next = null;
+			int k = 0;
+			for (; runs[k] != null; k++) {
+				run = merge(runs[k], run, order);
+				runs[k] = null;
+			}
+			runs[k] = run;
+			top = Math.max(top, k + 1);
+		}
+
+		// Merge what's left, the shorter, later runs first
+		Node sorted = null;
+		for (int k = 0; k < top; k++) {
+			if (runs[k] != null) {
+				sorted = sorted == null ? runs[k] : merge(runs[k], sorted, order);
+			}
+		}
+
+		// Fix the prev links, and find the cursor's new index on the way
+		int n = length(), index = 0, i = 0;
+		Node prev = null;
+		for (Node node = sorted; node != null; prev = node, node = node.next, i++) {
+			node.prev = prev;
+			if (node == current) {
+				index = i;
+			}
+		}
+		front = sorted;
+		back = prev;
+		prevCount = index;
+		nextCount = n - index;
+	}
+
+	// Merges sorted chains a and b, which come before and after each
+	// other in the list, taking from a on ties so the sort is stable
+	private static Node merge(Node a, Node b, IntComparator order) {
+		Node head;
+		if (order.compare(b.data, a.data) < 0) {
+			head = b;
+			b = b.next;
+		}
+		else {
+			head = a;
+			a = a.next;
+		}
+		Node tail = head;
+		while (a != null && b != null) {
+			if (order.compare(b.data, a.data) < 0) {
+				tail.next = b;
+				tail = b;
+				b = b.next;
+			}
+			else {
+				tail.next = a;
+				tail = a;
+				a = a.next;
+			}
 		}
+		tail.next = a != null ? a : b;
+		return head;
 	}
 
 	// Convert the list to a string
 	public String toString() {
-		String s = "";
-		for (int d : this) {
-			s += d;
-			if (this.current != null) {
-				s += " ";
+		StringBuilder s = new StringBuilder();
+		Node node = front;
+		for (int i = 0; i < length(); i++, node = node.next) {
+			if (i > 0) {
+				s.append(' ');
 			}
+			s.append(node.data);
 		}
-		return s;
+		return s.toString();
+	}
+
+	// Write the same text as toString() to out, in batches through one
+	// reused buffer rather than as one big string
+	public void writeTo(Appendable out) throws IOException {
+		StringBuilder buffer = new StringBuilder(WRITE_BATCH + 16);
+		Node node = front;
+		for (int i = 0; i < length(); i++, node = node.next) {
+			if (i > 0) {
+				buffer.append(' ');
+			}
+			buffer.append(node.data);
+			if (buffer.length() >= WRITE_BATCH) {
+				out.append(buffer);
+				buffer.setLength(0);
+			}
+		}
+		out.append(buffer);
 	}
 
 	// Private utilities
+	// A node holding data, from the pool when it has one
+	private Node obtain(int data) {
+		if (pool == null) {
+			return new Node(data);
+		}
+		Node node = pool;
+		pool = node.next;
+		poolSize--;
+		node.next = null;
+		node.prev = null;
+		node.data = data;
+		return node;
+	}
+
+	// Pools a node that was just unlinked, unless a copy may still reach
+	// it or the pool is full
+	private void recycle(Node node) {
+		if (poolSize >= poolLimit || owners.get() > 1) {
+			return;
+		}
+		node.prev = null;
+		node.next = pool;
+		pool = node;
+		poolSize++;
+	}
+
+	// other itself, or a node-backed list of the same elements when other
+	// keeps its elements some other way
+	private static List nodesOf(List other) {
+		return linked(other) ? other : new List(other);
+	}
+
+	// Whether other keeps its elements in this class's nodes. A subclass
+	// may store them however it likes, so only a plain List's nodes are
+	// shared or relinked, and anything else goes through forEachInt().
+	private static boolean linked(List other) {
+		return other.getClass() == List.class;
+	}
+
+	// Empties the list without pooling its nodes, once another list has
+	// taken them over
+	private void forget() {
+		dropIndex();
+		prevCount = 0;
+		nextCount = 0;
+		current = null;
+		front = null;
+		back = null;
+	}
+
 	private void createCurrent(int data) {
-		current = new Node(data);
+		// The new node is this list's alone, whatever it shared before
+		if (owners.get() > 1) {
+			owners.decrementAndGet();
+			owners = new AtomicInteger(1);
+		}
+		dropIndex();
+		current = obtain(data);
 		front = current;
 		back = current;
-		nextCount++;
+
+		// An undefined cursor may have left the counts split any which way
+		prevCount = 0;
+		nextCount = 1;
 	}
 
-	// Iteration
-	private class ListIterator implements Iterator<Integer> {
-		List list = null;
-		Node tmpCurrent = null;
-		int tmpPrevCount = -1, tmpNextCount = -1;
+	// Gives this list its own nodes if a copy still shares them, keeping
+	// the cursor on the same index. Called before any node is relinked;
+	// moving the cursor or front and back never changes a node, so those
+	// are safe on shared nodes.
+	private void unshare() {
+		if (owners.get() == 1) {
+			return;
+		}
+		Node node = front, prev = null, newCurrent = null;
+		for (int i = 0; i < length(); i++, node = node.next) {
+			Node copy = obtain(node.data);
+			copy.prev = prev;
+			if (prev == null) {
+				front = copy;
+			}
+			else {
+				prev.next = copy;
+			}
+			if (node == current) {
+				newCurrent = copy;
+			}
+			prev = copy;
+		}
+		back = prev;
+		current = newCurrent;
+		dropIndex();
+		owners.decrementAndGet();
+		owners = new AtomicInteger(1);
+	}
 
-		ListIterator(List list) {
-			this.list = list;
-			this.tmpCurrent = list.current;
-			this.tmpPrevCount = list.prevCount;
-			this.tmpNextCount = list.nextCount;
-			this.list.moveFront();
+	// Finds the node at index i, walking from the cursor or an end when
+	// one is close and going through the index otherwise. Only builds a
+	// missing index if build is set, so reads leave the list alone.
+	private Node nodeAt(int i, boolean build) {
+		int fromFront = i, fromBack = length() - 1 - i;
+		int fromCursor = current == null ? Integer.MAX_VALUE : Math.abs(i - prevCount);
+		int closest = Math.min(fromCursor, Math.min(fromFront, fromBack));
+		if (closest > WALK_LIMIT && (head != null || build)) {
+			if (head == null) {
+				makeIndex();
+			}
+			return locate(i);
 		}
 
-		public boolean hasNext() {
-			if (list.index() >= 0) {
-				return true;
+		Node node;
+		if (closest == fromCursor) {
+			node = current;
+			for (int k = prevCount; k < i; k++) {
+				node = node.next;
+			}
+			for (int k = prevCount; k > i; k--) {
+				node = node.prev;
+			}
+		}
+		else if (closest == fromFront) {
+			node = front;
+			for (int k = 0; k < i; k++) {
+				node = node.next;
+			}
+		}
+		else {
+			node = back;
+			for (int k = length() - 1; k > i; k--) {
+				node = node.prev;
+			}
+		}
+		return node;
+	}
+
+	// Node at index i, through the index
+	private Node locate(int i) {
+		int pos = -1;
+		Node node = null;
+		for (IndexNode x = head; x != null; x = x.down) {
+			while (x.right != null && pos + x.width <= i) {
+				pos += x.width;
+				x = x.right;
+			}
+			node = x.node;
+		}
+
+		// Walk the last few nodes level 1 skips over
+		if (node == null) {
+			node = front;
+			pos = 0;
+		}
+		for (; pos < i; pos++) {
+			node = node.next;
+		}
+		return node;
+	}
+
+	// Builds a balanced index: level L holds the nodes whose index + 1 is
+	// a multiple of 2^L
+	private void makeIndex() {
+		IndexNode level = new IndexNode(null, null), last = level;
+		int lastPos = -1;
+		Node node = front;
+		for (int i = 0; i < length(); i++, node = node.next) {
+			if (i % 2 == 1) {
+				last.right = new IndexNode(node, null);
+				last.width = i - lastPos;
+				last = last.right;
+				lastPos = i;
+			}
+		}
+
+		head = null;
+		levels = 0;
+		while (level.right != null) {
+			head = level;
+			levels++;
+
+			// Every second entry of this level goes up to the next
+			IndexNode up = new IndexNode(null, level);
+			last = up;
+			lastPos = -1;
+			int pos = -1;
+			boolean take = false;
+			for (IndexNode x = level; x.right != null; ) {
+				pos += x.width;
+				x = x.right;
+				if (take) {
+					last.right = new IndexNode(x.node, x);
+					last.width = pos - lastPos;
+					last = last.right;
+					lastPos = pos;
+				}
+				take = !take;
+			}
+			level = up;
+		}
+	}
+
+	// Records that node was just linked in at index i
+	private void indexInsert(int i, Node node) {
+		if (head == null) {
+			return;
+		}
+
+		// Give the node a tower of random height, each level half as likely
+		int height = Integer.numberOfTrailingZeros(~ThreadLocalRandom.current().nextInt());
+		height = Math.min(height, levels + 1);
+		if (height > levels) {
+			head = new IndexNode(null, head);
+			levels++;
+		}
+
+		// On each level find the last entry before i. The entry after it
+		// is now one further away, unless the new node goes in between.
+		int pos = -1, level = levels;
+		IndexNode above = null;
+		for (IndexNode x = head; x != null; x = x.down, level--) {
+			while (x.right != null && pos + x.width < i) {
+				pos += x.width;
+				x = x.right;
+			}
+			if (level <= height) {
+				IndexNode entry = new IndexNode(node, null);
+				entry.right = x.right;
+				entry.width = pos + x.width + 1 - i;
+				x.right = entry;
+				x.width = i - pos;
+				if (above != null) {
+					above.down = entry;
+				}
+				above = entry;
 			}
 			else {
-				list.current = tmpCurrent;
-				list.prevCount = tmpPrevCount;
-				list.nextCount = tmpNextCount;
-				return false;
+				x.width++;
+			}
+		}
+	}
+
+	// Records that the node at index i is being unlinked
+	private void indexDelete(int i) {
+		int pos = -1;
+		for (IndexNode x = head; x != null; x = x.down) {
+			while (x.right != null && pos + x.width < i) {
+				pos += x.width;
+				x = x.right;
+			}
+			if (x.right != null && pos + x.width == i) {
+				x.width += x.right.width - 1;
+				x.right = x.right.right;
+			}
+			else {
+				x.width--;
 			}
 		}
 
-		public Integer next() {
-			Integer toReturn = list.get();
-			list.moveNext();
+		// Drop levels left empty
+		while (head != null && head.right == null) {
+			head = head.down;
+			levels--;
+		}
+	}
+
+	private void dropIndex() {
+		head = null;
+		levels = 0;
+	}
+
+	// Iteration. The iterator keeps its own position and never touches
+	// the list's cursor, so any number can read the list at once as long
+	// as nothing modifies it.
+	private class ListIterator implements PrimitiveIterator.OfInt {
+		Node node = null;
+		int remaining = 0;
+
+		ListIterator(List list) {
+			this.node = list.front;
+			this.remaining = list.length();
+		}
+
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		public int nextInt() {
+			if (remaining <= 0) {
+				throw new NoSuchElementException("next() past the end");
+			}
+			int toReturn = node.data;
+			node = node.next;
+			remaining--;
 			return toReturn;
 		}
 	}
@@ -375,4 +987,30 @@ public class List implements Iterable<Integer> {
 	public Iterator<Integer> iterator() {
 		return new ListIterator(this);
 	}
+
+	// Same as iterator(), but nextInt() hands back ints without boxing
+	public PrimitiveIterator.OfInt intIterator() {
+		return new ListIterator(this);
+	}
+
+	// Calls action on every element from front to back, without boxing
+	// and without touching the cursor
+	public void forEachInt(IntConsumer action) {
+		Node node = front;
+		for (int i = length(); i > 0; i--, node = node.next) {
+			action.accept(node.data);
+		}
+	}
+
+	// Nodes can't be split without walking them, so parallel streams get
+	// the elements in growing batches copied into int arrays
+	public Spliterator.OfInt spliterator() {
+		return Spliterators.spliterator(intIterator(), length(),
+				Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	// The elements as an IntStream; call parallel() on it to split the work
+	public IntStream intStream() {
+		return StreamSupport.intStream(spliterator(), false);
+	}
 }
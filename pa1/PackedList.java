@@ -0,0 +1,512 @@
+/*
+ * PackedList.java
+ *
+ * Copyright (C) 2017, Spencer Peterson
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+// A List of ints kept in one int array instead of a Node per element.
+// The array is a gap buffer: the elements are values[0..gapStart)
+// followed by values[gapEnd..values.length), and inserting or deleting
+// moves the gap to that spot first. Edits near the last one are cheap,
+// and so is walking the list, since the elements sit next to each other
+// in memory.
+//
+// Behaves exactly like List, cursor included, so either can be picked
+// when the list is constructed.
+public class PackedList extends List {
+
+	int values[] = new int[16];
+	int gapStart = 0, gapEnd = 16;
+	int cursor = -1;
+
+	// Constructors
+	public PackedList() {}
+
+	public PackedList(int data[]) {
+		extend(data);
+	}
+
+	public PackedList(List toCopy) {
+		if (toCopy instanceof PackedList) {
+			PackedList p = (PackedList) toCopy;
+			values = new int[Math.max(16, p.length())];
+			gapStart = p.length();
+			gapEnd = values.length;
+			System.arraycopy(p.values, 0, values, 0, p.gapStart);
+			System.arraycopy(p.values, p.gapEnd, values, p.gapStart, p.values.length - p.gapEnd);
+			cursor = gapStart > 0 ? 0 : -1;
+		}
+		else {
+			concat(toCopy);
+		}
+	}
+
+	public List copy() {
+		return new PackedList(this);
+	}
+
+	// Access functions
+	public int length() {
+		return values.length - (gapEnd - gapStart);
+	}
+
+	public int index() {
+		return cursor;
+	}
+
+	public int front() {
+		if (length() == 0) {
+			throw new IndexOutOfBoundsException("front() from empty list");
+		}
+		return at(0);
+	}
+
+	public int back() {
+		if (length() == 0) {
+			throw new IndexOutOfBoundsException("back() from empty list");
+		}
+		return at(length() - 1);
+	}
+
+	public int get() {
+		if (cursor < 0) {
+			throw new IndexOutOfBoundsException("get() from null cursor");
+		}
+		return at(cursor);
+	}
+
+	public int get(int i) {
+		if (i < 0 || i >= length()) {
+			throw new IndexOutOfBoundsException("get() index out of range");
+		}
+		return at(i);
+	}
+
+	public boolean equals(List L) {
+		if (L.length() != length()) {
+			return false;
+		}
+
+		// L's iterator leaves its cursor alone, whatever kind of list it is
+		PrimitiveIterator.OfInt other = L.intIterator();
+		for (int i = 0; i < length(); i++) {
+			if (at(i) != other.nextInt()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean equals(int data[]) {
+		if (data.length != length()) {
+			return false;
+		}
+		for (int i = 0; i < data.length; i++) {
+			if (at(i) != data[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Mutability
+	public void clear() {
+		gapStart = 0;
+		gapEnd = values.length;
+		cursor = -1;
+	}
+
+	public void moveFront() {
+		cursor = length() > 0 ? 0 : -1;
+	}
+
+	public void moveBack() {
+		cursor = length() - 1;
+	}
+
+	public void moveTo(int i) {
+		if (i < 0 || i >= length()) {
+			throw new IndexOutOfBoundsException("moveTo() index out of range");
+		}
+		cursor = i;
+	}
+
+	public void movePrev() {
+		if (cursor >= 0) {
+			cursor--;
+		}
+	}
+
+	public void moveNext() {
+		if (cursor >= 0) {
+			cursor++;
+			if (cursor == length()) {
+				cursor = -1;
+			}
+		}
+	}
+
+	public void prepend(int data) {
+		if (length() == 0) {
+			createCurrent(data);
+		}
+		else {
+			insertAt(0, data);
+			if (cursor >= 0) {
+				cursor++;
+			}
+		}
+	}
+
+	public void append(int data) {
+		if (length() == 0) {
+			createCurrent(data);
+		}
+		else {
+			insertAt(length(), data);
+		}
+	}
+
+	public void insertBefore(int data) {
+		if (length() == 0) {
+			createCurrent(data);
+		}
+		else {
+			checkCursor("insertBefore()");
+			insertAt(cursor, data);
+			cursor++;
+		}
+	}
+
+	public void insertAfter(int data) {
+		if (length() == 0) {
+			createCurrent(data);
+		}
+		else {
+			checkCursor("insertAfter()");
+			insertAt(cursor + 1, data);
+		}
+	}
+
+	public void deleteFront() {
+		if (length() <= 0) {
+			throw new IndexOutOfBoundsException("deleteFront() from empty list");
+		}
+		removeAt(0);
+		if (cursor >= 0) {
+			cursor--;
+		}
+	}
+
+	public void deleteBack() {
+		if (length() <= 0) {
+			throw new IndexOutOfBoundsException("deleteBack() from empty list");
+		}
+		if (cursor == length() - 1) {
+			cursor = -1;
+		}
+		removeAt(length() - 1);
+	}
+
+	public void delete() {
+		if (length() <= 0) {
+			throw new IndexOutOfBoundsException("delete() from empty list");
+		}
+		checkCursor("delete()");
+		removeAt(cursor);
+		cursor = -1;
+	}
+
+	// Extends the list with an array of integers, copying them in at once
+	public void extend(int data[]) {
+		if (data.length == 0) {
+			return;
+		}
+		if (length() == 0) {
+			cursor = 0;
+		}
+		moveGap(length());
+		ensureGap(data.length);
+		System.arraycopy(data, 0, values, gapStart, data.length);
+		gapStart += data.length;
+	}
+
+	// With no nodes to relink, these copy the elements across instead, in
+	// one pass and without moving the gap more than once
+	public void spliceAfterCursor(List other) {
+		if (other == this) {
+			throw new IllegalArgumentException("spliceAfterCursor() of a list into itself");
+		}
+		if (other.length() == 0) {
+			return;
+		}
+		if (length() == 0) {
+			moveAll(other);
+			return;
+		}
+		checkCursor("spliceAfterCursor()");
+		insertAll(cursor + 1, other);
+	}
+
+	public List splitAtCursor() {
+		checkCursor("splitAtCursor()");
+		int count = length() - cursor - 1;
+		moveGap(cursor + 1);
+		PackedList tail = new PackedList();
+		tail.values = new int[Math.max(16, count)];
+		System.arraycopy(values, gapEnd, tail.values, 0, count);
+		tail.gapStart = count;
+		tail.gapEnd = tail.values.length;
+		tail.cursor = count > 0 ? 0 : -1;
+		gapEnd = values.length;
+		return tail;
+	}
+
+	public void moveAll(List other) {
+		if (other == this) {
+			throw new IllegalArgumentException("moveAll() of a list into itself");
+		}
+		if (other.length() == 0) {
+			return;
+		}
+		if (length() == 0) {
+			cursor = 0;
+		}
+		insertAll(length(), other);
+	}
+
+	// Both sorts close the gap and sort the array in place. The cursor
+	// stays on the same element, which for a stable sort is the one that
+	// ends up after everything ordered before it and after the equal
+	// elements that were in front of it.
+	public void sort() {
+		int index = sortedIndex(Integer::compare);
+		moveGap(length());
+		Arrays.sort(values, 0, gapStart);
+		cursor = index;
+	}
+
+	public void sort(IntComparator order) {
+		int index = sortedIndex(order);
+		moveGap(length());
+		int n = gapStart;
+
+		// Bottom-up merge sort, back and forth between values and one buffer
+		int from[] = values, to[] = new int[n];
+		for (int width = 1; width < n; width *= 2) {
+			for (int low = 0; low < n; low += 2 * width) {
+				int middle = Math.min(low + width, n), high = Math.min(low + 2 * width, n);
+				int i = low, j = middle, k = low;
+				while (i < middle && j < high) {
+					to[k++] = order.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+				}
+				System.arraycopy(from, i, to, k, middle - i);
+				System.arraycopy(from, j, to, k + middle - i, high - j);
+			}
+			int swap[] = from;
+			from = to;
+			to = swap;
+		}
+		if (from != values) {
+			System.arraycopy(from, 0, values, 0, n);
+		}
+		cursor = index;
+	}
+
+	// Convert the list to a string
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < length(); i++) {
+			if (i > 0) {
+				s.append(' ');
+			}
+			s.append(at(i));
+		}
+		return s.toString();
+	}
+
+	// Write the same text as toString() to out, in batches through one
+	// reused buffer rather than as one big string
+	public void writeTo(Appendable out) throws IOException {
+		StringBuilder buffer = new StringBuilder(WRITE_BATCH + 16);
+		for (int i = 0; i < length(); i++) {
+			if (i > 0) {
+				buffer.append(' ');
+			}
+			buffer.append(at(i));
+			if (buffer.length() >= WRITE_BATCH) {
+				out.append(buffer);
+				buffer.setLength(0);
+			}
+		}
+		out.append(buffer);
+	}
+
+	// Private utilities
+	private void createCurrent(int data) {
+		insertAt(0, data);
+		cursor = 0;
+	}
+
+	private void checkCursor(String method) {
+		if (cursor < 0) {
+			throw new IndexOutOfBoundsException(method + " from null cursor");
+		}
+	}
+
+	// Element at index i
+	int at(int i) {
+		return i < gapStart ? values[i] : values[i + gapEnd - gapStart];
+	}
+
+	private void insertAt(int i, int value) {
+		ensureGap(1);
+		moveGap(i);
+		values[gapStart++] = value;
+	}
+
+	// Where the cursor's element lands when the list is sorted by order
+	private int sortedIndex(IntComparator order) {
+		if (cursor < 0) {
+			return -1;
+		}
+		int target = at(cursor), index = 0;
+		for (int i = 0; i < length(); i++) {
+			int c = order.compare(at(i), target);
+			if (c < 0 || (c == 0 && i < cursor)) {
+				index++;
+			}
+		}
+		return index;
+	}
+
+	// Moves all of other's elements in at index i, leaving other empty
+	private void insertAll(int i, List other) {
+		ensureGap(other.length());
+		moveGap(i);
+		other.forEachInt(value -> values[gapStart++] = value);
+		other.clear();
+	}
+
+	private void removeAt(int i) {
+		moveGap(i);
+		gapEnd++;
+	}
+
+	// Slides elements across the gap until it starts at index i
+	private void moveGap(int i) {
+		if (i < gapStart) {
+			int count = gapStart - i;
+			System.arraycopy(values, i, values, gapEnd - count, count);
+			gapStart = i;
+			gapEnd -= count;
+		}
+		else if (i > gapStart) {
+			int count = i - gapStart;
+			System.arraycopy(values, gapEnd, values, gapStart, count);
+			gapStart = i;
+			gapEnd += count;
+		}
+	}
+
+	// Grows the array, if needed, so the gap holds at least count ints
+	private void ensureGap(int count) {
+		if (gapEnd - gapStart >= count) {
+			return;
+		}
+		int capacity = Math.max(length() + count, values.length + (values.length >> 1));
+		int newValues[] = new int[capacity];
+		int tail = values.length - gapEnd;
+		System.arraycopy(values, 0, newValues, 0, gapStart);
+		System.arraycopy(values, gapEnd, newValues, capacity - tail, tail);
+		values = newValues;
+		gapEnd = capacity - tail;
+	}
+
+	// Iteration, straight off the array and without touching the cursor
+	private class PackedIterator implements PrimitiveIterator.OfInt {
+		int i = 0;
+
+		public boolean hasNext() {
+			return i < length();
+		}
+
+		public int nextInt() {
+			if (i >= length()) {
+				throw new NoSuchElementException("next() past the end");
+			}
+			return at(i++);
+		}
+	}
+
+	public Iterator<Integer> iterator() {
+		return new PackedIterator();
+	}
+
+	public PrimitiveIterator.OfInt intIterator() {
+		return new PackedIterator();
+	}
+
+	public void forEachInt(IntConsumer action) {
+		int n = length();
+		for (int i = 0; i < n; i++) {
+			action.accept(at(i));
+		}
+	}
+
+	// Indexes [from, to) split in half in O(1), so parallel streams divide
+	// the array evenly
+	private class PackedSpliterator implements Spliterator.OfInt {
+		int from, to;
+
+		PackedSpliterator(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public boolean tryAdvance(IntConsumer action) {
+			if (from >= to) {
+				return false;
+			}
+			action.accept(at(from++));
+			return true;
+		}
+
+		public void forEachRemaining(IntConsumer action) {
+			for (; from < to; from++) {
+				action.accept(at(from));
+			}
+		}
+
+		public Spliterator.OfInt trySplit() {
+			int middle = (from + to) >>> 1;
+			if (middle <= from) {
+				return null;
+			}
+			PackedSpliterator prefix = new PackedSpliterator(from, middle);
+			from = middle;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return to - from;
+		}
+
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL
+					| Spliterator.SIZED | Spliterator.SUBSIZED;
+		}
+	}
+
+	public Spliterator.OfInt spliterator() {
+		return new PackedSpliterator(0, length());
+	}
+}
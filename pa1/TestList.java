@@ -3,6 +3,9 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import org.junit.Test;
 import org.junit.Before;
+import java.util.ArrayList;
+import java.util.PrimitiveIterator;
+import java.util.Random;
 
 public class TestList {
 	List l;
@@ -246,6 +249,29 @@ public class TestList {
 		assertFalse(this.l.copy().equals(new List(fake)));
 	}
 
+	@Test
+	public void copyIsIndependent() {
+		int data[] = {1, 2, 3, 4};
+		this.l = new List(data);
+		this.l.deleteBack();
+		List copy = this.l.copy();
+		List second = copy.copy();
+		assertEquals(0, copy.index());
+
+		copy.moveNext();
+		copy.delete();
+		copy.append(9);
+		this.l.insertBefore(0);
+		second.deleteFront();
+		second.prepend(7);
+
+		assertEquals("1 3 9", copy.toString());
+		assertEquals("0 1 2 3", this.l.toString());
+		assertEquals("7 2 3", second.toString());
+		assertEquals(-1, second.index());
+		assertEquals(1, this.l.index());
+	}
+
 	@Test
 	public void concat() {
 		int data[] = {1, 2, 3, 4};
@@ -280,6 +306,93 @@ public class TestList {
 		assertEquals("3 1 2", this.l.toString());
 	}
 
+	@Test
+	public void writeTo() throws java.io.IOException {
+		int data[] = {4, -2, 17, 0};
+		this.l = new List(data);
+		StringBuilder out = new StringBuilder();
+		this.l.writeTo(out);
+		assertEquals("4 -2 17 0", out.toString());
+		assertEquals(this.l.toString(), out.toString());
+	}
+
+	@Test
+	public void toStringAfterDeleteBack() {
+		int data[] = {1, 2, 3};
+		this.l = new List(data);
+		this.l.deleteBack();
+		assertEquals("1 2", this.l.toString());
+		this.l.clear();
+		assertEquals("", this.l.toString());
+	}
+
+	@Test
+	public void insertAtEndsAfterDelete() {
+		int data[] = {1, 2, 3, 4};
+		this.l = new List(data);
+		this.l.moveFront();
+		this.l.moveNext();
+		this.l.deleteFront();
+		assertEquals(0, this.l.index());
+		this.l.insertBefore(5);
+		this.l.deleteBack();
+		this.l.moveBack();
+		this.l.insertAfter(6);
+		this.l.moveNext();
+		assertEquals(3, this.l.index());
+		this.l.moveNext();
+		assertEquals(-1, this.l.index());
+		assertEquals("5 2 3 6", this.l.toString());
+
+		this.l.clear();
+		this.l.moveFront();
+		assertEquals(-1, this.l.index());
+	}
+
+	@Test
+	public void intIteration() {
+		int data[] = new int[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i * 3;
+		}
+		this.l = new List(data);
+		this.l.moveFront();
+
+		PrimitiveIterator.OfInt it = this.l.intIterator();
+		long sum = 0;
+		while (it.hasNext()) {
+			sum += it.nextInt();
+		}
+		assertEquals(1498500, sum);
+
+		long[] total = {0};
+		this.l.forEachInt(i -> total[0] += i);
+		assertEquals(1498500, total[0]);
+
+		assertEquals(1498500, this.l.intStream().parallel().asLongStream().sum());
+		assertEquals(1000, this.l.intStream().parallel().filter(i -> i % 3 == 0).count());
+		assertTrue(this.l.equals(this.l.intStream().parallel().toArray()));
+		assertEquals(0, this.l.index());
+	}
+
+	@Test
+	public void readsKeepCursor() {
+		int data[] = {1, 2, 3};
+		this.l = new List(data);
+		this.l.moveFront();
+		this.l.moveNext();
+
+		List other = new List(data);
+		assertTrue(this.l.equals(other));
+		assertTrue(this.l.equals(data));
+		for (int i : this.l) {
+			break;
+		}
+		assertEquals(1, this.l.index());
+		assertEquals(2, this.l.get());
+		assertEquals(0, other.index());
+	}
+
 	@Test
 	public void frontIsCorrect() {
 		this.l.append(1);
@@ -501,4 +614,216 @@ public class TestList {
 		assertEquals(0, this.l.index());
 		assertTrue(this.l.equals(B));
 	}
+
+	@Test
+	public void positionalAccess() {
+		// Enough elements that far lookups go through the index, with
+		// edits all over once it's built
+		ArrayList<Integer> model = new ArrayList<Integer>();
+		Random random = new Random(7);
+		for (int i = 0; i < 500; i++) {
+			this.l.append(i);
+			model.add(i);
+		}
+		for (int step = 0; step < 5000; step++) {
+			int i = random.nextInt(model.size());
+			switch (random.nextInt(6)) {
+			case 0:
+				this.l.moveTo(i);
+				this.l.insertBefore(step);
+				model.add(i, step);
+				break;
+			case 1:
+				this.l.moveTo(i);
+				this.l.insertAfter(step);
+				model.add(i + 1, step);
+				break;
+			case 2:
+				this.l.moveTo(i);
+				this.l.delete();
+				model.remove(i);
+				break;
+			case 3:
+				this.l.prepend(step);
+				model.add(0, step);
+				break;
+			case 4:
+				this.l.append(step);
+				model.add(step);
+				break;
+			default:
+				if (random.nextBoolean()) {
+					this.l.deleteFront();
+					model.remove(0);
+				}
+				else {
+					this.l.deleteBack();
+					model.remove(model.size() - 1);
+				}
+			}
+			i = random.nextInt(model.size());
+			assertEquals((int) model.get(i), this.l.get(i));
+			this.l.moveTo(i);
+			assertEquals(i, this.l.index());
+			assertEquals((int) model.get(i), this.l.get());
+		}
+		assertEquals(model.size(), this.l.length());
+		for (int i = 0; i < model.size(); i++) {
+			assertEquals((int) model.get(i), this.l.get(i));
+		}
+	}
+
+	@Test
+	public void otherListKinds() {
+		// List knows nothing about its subclasses, so any of them can be
+		// copied, compared and moved in
+		List other = new List(new int[] {1, 2, 3}) {};
+		List copy = new List(other);
+		assertTrue(copy.equals(other));
+		assertTrue(other.equals(copy));
+		assertTrue(new PackedList(other).equals(other));
+
+		this.l.append(0);
+		this.l.moveAll(other);
+		assertEquals("0 1 2 3", this.l.toString());
+		assertEquals(0, other.length());
+		assertTrue(copy.equals(new List(new int[] {1, 2, 3})));
+	}
+
+	@Test
+	public void getLeavesIndexAlone() {
+		for (int i = 0; i < 500; i++) {
+			this.l.append(i);
+		}
+
+		// Reads walk rather than build the index, so they change nothing
+		for (int i = 0; i < 500; i += 7) {
+			assertEquals(i, this.l.get(i));
+		}
+		assertTrue(this.l.head == null);
+
+		this.l.buildIndex();
+		assertTrue(this.l.head != null);
+		for (int i = 0; i < 500; i += 7) {
+			assertEquals(i, this.l.get(i));
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void moveToOutOfRange() {
+		this.l.append(1);
+		this.l.moveTo(1);
+	}
+
+	@Test
+	public void pooledChurn() {
+		this.l.setPoolLimit(8);
+		for (int round = 0; round < 3; round++) {
+			this.l.extend(new int[] {1, 2, 3, 4, 5});
+			this.l.moveFront();
+			this.l.moveNext();
+			this.l.delete();
+			this.l.deleteFront();
+			this.l.deleteBack();
+			this.l.prepend(6);
+			this.l.moveBack();
+			this.l.insertBefore(7);
+			assertTrue(this.l.equals(new List(new int[] {6, 3, 7, 4})));
+			this.l.clear();
+			assertEquals(0, this.l.length());
+			assertEquals(-1, this.l.index());
+		}
+		assertTrue(this.l.poolSize <= 8);
+	}
+
+	@Test
+	public void pooledCopy() {
+		// Nodes a copy can still reach must not be reused
+		this.l.setPoolLimit(8);
+		this.l.extend(new int[] {1, 2, 3});
+		List B = this.l.copy();
+		this.l.deleteFront();
+		this.l.deleteBack();
+		this.l.clear();
+		this.l.extend(new int[] {4, 5, 6});
+		assertTrue(B.equals(new List(new int[] {1, 2, 3})));
+	}
+
+	@Test
+	public void spliceAndSplit() {
+		this.l.extend(new int[] {1, 2, 3});
+		this.l.moveFront();
+		this.l.moveNext();
+		List other = new List(new int[] {7, 8});
+		this.l.spliceAfterCursor(other);
+		assertEquals(0, other.length());
+		assertEquals(1, this.l.index());
+		assertTrue(this.l.equals(new List(new int[] {1, 2, 7, 8, 3})));
+
+		this.l.moveNext();
+		List tail = this.l.splitAtCursor();
+		assertTrue(this.l.equals(new List(new int[] {1, 2, 7})));
+		assertTrue(tail.equals(new List(new int[] {8, 3})));
+		assertEquals(2, this.l.index());
+		assertEquals(0, tail.index());
+
+		// Both halves stay usable at their ends
+		this.l.append(4);
+		tail.prepend(5);
+		assertTrue(this.l.equals(new List(new int[] {1, 2, 7, 4})));
+		assertTrue(tail.equals(new List(new int[] {5, 8, 3})));
+	}
+
+	@Test
+	public void moveAll() {
+		this.l.moveAll(new List(new int[] {1, 2}));
+		assertEquals(0, this.l.index());
+		List other = new List(new int[] {3, 4});
+		List copy = other.copy();
+		this.l.moveAll(other);
+		this.l.moveAll(new PackedList(new int[] {5}));
+		assertEquals(0, other.length());
+		assertTrue(this.l.equals(new List(new int[] {1, 2, 3, 4, 5})));
+
+		// The copy keeps the nodes it shared
+		this.l.deleteBack();
+		this.l.append(6);
+		assertTrue(copy.equals(new List(new int[] {3, 4})));
+	}
+
+	@Test
+	public void sort() {
+		this.l.extend(new int[] {5, -1, 3, 3, 9, 0, 3});
+		this.l.moveFront();
+		this.l.moveNext();
+		this.l.moveNext();
+		this.l.sort();
+		assertTrue(this.l.equals(new List(new int[] {-1, 0, 3, 3, 3, 5, 9})));
+		assertEquals(2, this.l.index());
+
+		// Stable, so equal elements keep their order, cursor included
+		this.l.moveBack();
+		this.l.prepend(13);
+		this.l.sort((a, b) -> Integer.compare(Math.floorMod(a, 2), Math.floorMod(b, 2)));
+		assertTrue(this.l.equals(new List(new int[] {0, 13, -1, 3, 3, 3, 5, 9})));
+		assertEquals(7, this.l.index());
+		this.l.append(1);
+		assertEquals(1, this.l.back());
+	}
+
+	@Test
+	public void sortLarge() {
+		Random random = new Random(3);
+		int data[] = new int[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt(100);
+		}
+		this.l.extend(data);
+		List B = this.l.copy();
+		this.l.sort();
+		assertEquals(data[0], this.l.get());
+		java.util.Arrays.sort(data);
+		assertTrue(this.l.equals(new List(data)));
+		assertFalse(this.l.equals(B));
+	}
 }
@@ -0,0 +1,201 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.junit.Before;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+public class TestPackedList {
+	PackedList l;
+
+	@Before
+	public void setup() {
+		this.l = new PackedList();
+	}
+
+	@Test
+	public void empty() {
+		assertEquals(0, this.l.length());
+		assertEquals(-1, this.l.index());
+		assertEquals("", this.l.toString());
+	}
+
+	@Test
+	public void cursorInsert() {
+		int data[] = {1, 3, 5};
+		this.l = new PackedList(data);
+		assertEquals(0, this.l.index());
+		this.l.moveNext();
+		this.l.insertBefore(2);
+		this.l.insertAfter(4);
+		assertEquals(2, this.l.index());
+		assertEquals(3, this.l.get());
+		assertEquals("1 2 3 4 5", this.l.toString());
+		assertEquals(1, this.l.front());
+		assertEquals(5, this.l.back());
+	}
+
+	@Test
+	public void equalsList() {
+		int data[] = {1, 2, 3, 4};
+		int wrong[] = {1, 2, 3, 5};
+		this.l = new PackedList(data);
+		assertTrue(this.l.equals(new List(data)));
+		assertTrue(new List(data).equals(this.l));
+		assertTrue(this.l.equals(this.l.copy()));
+		assertTrue(this.l.equals(data));
+		assertFalse(this.l.equals(new PackedList(wrong)));
+		assertFalse(new List(wrong).equals(this.l));
+	}
+
+	@Test
+	public void iterate() {
+		int data[] = {4, 5, 6};
+		this.l = new PackedList(data);
+		this.l.moveBack();
+		int sum = 0;
+		for (int i : this.l) {
+			sum += i;
+		}
+		assertEquals(15, sum);
+		assertEquals(2, this.l.index());
+	}
+
+	@Test
+	public void intIteration() {
+		int data[] = new int[1000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i * 3;
+		}
+		this.l = new PackedList(data);
+		this.l.moveFront();
+
+		PrimitiveIterator.OfInt it = this.l.intIterator();
+		long sum = 0;
+		while (it.hasNext()) {
+			sum += it.nextInt();
+		}
+		assertEquals(1498500, sum);
+
+		long[] total = {0};
+		this.l.forEachInt(i -> total[0] += i);
+		assertEquals(1498500, total[0]);
+
+		assertEquals(1498500, this.l.intStream().parallel().asLongStream().sum());
+		assertEquals(1000, this.l.intStream().parallel().filter(i -> i % 3 == 0).count());
+		assertTrue(this.l.equals(this.l.intStream().parallel().toArray()));
+		assertEquals(0, this.l.index());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getNullCursor() {
+		this.l.append(1);
+		this.l.moveNext();
+		this.l.get();
+	}
+
+	@Test
+	public void matchesList() {
+		// Run the same random operations on both kinds of list
+		Random random = new Random(101);
+		List list = new List();
+		for (int step = 0; step < 20000; step++) {
+			int value = random.nextInt(1000);
+			boolean cursor = list.index() >= 0;
+			switch (random.nextInt(12)) {
+				case 0: list.prepend(value); this.l.prepend(value); break;
+				case 1: list.append(value); this.l.append(value); break;
+				case 2:
+					if (cursor || list.length() == 0) {
+						list.insertBefore(value);
+						this.l.insertBefore(value);
+					}
+					break;
+				case 3:
+					if (cursor || list.length() == 0) {
+						list.insertAfter(value);
+						this.l.insertAfter(value);
+					}
+					break;
+				case 4:
+					if (list.length() > 0) {
+						list.deleteFront();
+						this.l.deleteFront();
+					}
+					break;
+				case 5:
+					if (list.length() > 0) {
+						list.deleteBack();
+						this.l.deleteBack();
+					}
+					break;
+				case 6:
+					if (cursor) {
+						list.delete();
+						this.l.delete();
+					}
+					break;
+				case 7: list.moveFront(); this.l.moveFront(); break;
+				case 8: list.moveBack(); this.l.moveBack(); break;
+				case 9: list.movePrev(); this.l.movePrev(); break;
+				case 10: list.moveNext(); this.l.moveNext(); break;
+				default:
+					if (random.nextInt(50) == 0) {
+						list.clear();
+						this.l.clear();
+					}
+					break;
+			}
+			assertEquals(list.length(), this.l.length());
+			assertEquals(list.index(), this.l.index());
+			if (list.index() >= 0) {
+				assertEquals(list.get(), this.l.get());
+			}
+		}
+		assertEquals(list.toString(), this.l.toString());
+		assertTrue(this.l.equals(list));
+	}
+
+	@Test
+	public void positionalAccess() {
+		this.l.extend(new int[] {4, 5, 6, 7});
+		this.l.moveTo(2);
+		this.l.insertBefore(9);
+		assertEquals(3, this.l.index());
+		assertEquals(9, this.l.get(2));
+		assertEquals(6, this.l.get());
+		assertEquals(7, this.l.get(4));
+	}
+
+	@Test
+	public void spliceAndSplit() {
+		this.l.extend(new int[] {1, 2, 3});
+		this.l.moveFront();
+		this.l.spliceAfterCursor(new List(new int[] {7, 8}));
+		assertTrue(this.l.equals(new int[] {1, 7, 8, 2, 3}));
+		assertEquals(0, this.l.index());
+
+		this.l.moveNext();
+		this.l.moveNext();
+		List tail = this.l.splitAtCursor();
+		assertTrue(this.l.equals(new int[] {1, 7, 8}));
+		assertTrue(tail.equals(new List(new int[] {2, 3})));
+		assertEquals(0, tail.index());
+
+		this.l.moveAll(tail);
+		assertEquals(0, tail.length());
+		assertTrue(this.l.equals(new int[] {1, 7, 8, 2, 3}));
+	}
+
+	@Test
+	public void sort() {
+		this.l.extend(new int[] {5, -1, 3, 3, 9, 0, 3});
+		this.l.moveTo(3);
+		this.l.sort((a, b) -> Integer.compare(Math.floorMod(a, 2), Math.floorMod(b, 2)));
+		assertTrue(this.l.equals(new int[] {0, 5, -1, 3, 3, 9, 3}));
+		assertEquals(4, this.l.index());
+		this.l.sort();
+		assertTrue(this.l.equals(new int[] {-1, 0, 3, 3, 3, 5, 9}));
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * ConcurrentMatrix.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * An nxn sparse matrix that many threads can change at once, with
+ * snapshots that keep reading the matrix as it was when they were taken.
+ */
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConcurrentMatrix {
+    // One version of a row, sorted by column with no zeros, in
+    // cols[0..size). stamp is the epoch it was written in, and older is
+    // the version it replaced.
+    private static class Row {
+        final long stamp;
+        Row older;
+        int[] cols;
+        double[] vals;
+        int size;
+
+        Row(long stamp, Row older, int capacity) {
+            this.stamp = stamp;
+            this.older = older;
+            this.cols = new int[capacity];
+            this.vals = new double[capacity];
+        }
+    }
+
+    // rows[i] is the newest version of row i, or null while it has never
+    // held an entry. Row i is only written while holding locks[i & mask],
+    // so writers to rows in different stripes never wait on each other.
+    private AtomicReferenceArray<Row> rows;
+    private ReentrantLock[] locks;
+    private int mask;
+    private LongAdder nnz = new LongAdder();
+    private int n;
+
+    // Writes made during epoch e are stamped e. Taking a snapshot ends the
+    // current epoch, and the snapshot sees every version stamped at or
+    // before it. Writers only read epoch while holding their stripe, and
+    // snapshots hold every stripe while they change it, so an epoch never
+    // ends in the middle of a write and writers share no lock.
+    private long epoch = 1;
+
+    // Epochs of the open snapshots, with how many are open at each. Only
+    // added to while holding every stripe, so a writer pruning under its
+    // stripe never misses a snapshot that could read the row. Closing
+    // only removes, which at worst makes a pruning writer keep a version
+    // a little longer.
+    private ConcurrentSkipListMap<Long, Integer> open = new ConcurrentSkipListMap<Long, Integer>();
+
+    // Rows that may still hold versions older than their newest, which
+    // closing a snapshot prunes so nothing waits for the next write
+    private Set<Integer> retained = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Constructs an nxn matrix with a few stripes per available core
+     */
+    public ConcurrentMatrix(int n) {
+        this(n, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Constructs an nxn matrix whose rows are spread over at least
+     * stripes locks (rounded up to a power of two)
+     */
+    public ConcurrentMatrix(int n, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("ConcurrentMatrix: stripes must be positive");
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(stripes, n)) * 2 - 1);
+        this.n = n;
+        this.rows = new AtomicReferenceArray<Row>(n + 1);
+        this.locks = new ReentrantLock[count];
+        this.mask = count - 1;
+        for (int s = 0; s < count; s++) {
+            locks[s] = new ReentrantLock();
+        }
+    }
+
+    /*
+     * Returns dimension of matrix (n)
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /*
+     * Returns number of non zero entries. While writers are running this
+     * is only approximate; use a snapshot for an exact count.
+     */
+    public int getNNZ() {
+        return nnz.intValue();
+    }
+
+    /*
+     * Returns the current entry at (i, j)
+     */
+    public double getEntry(int i, int j) {
+        checkBounds(i, j, "getEntry()");
+        ReentrantLock lock = locks[i & mask];
+        lock.lock();
+        try {
+            return find(rows.get(i), j);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Sets the entry at (i, j) to x. Only row i's stripe is locked.
+     * The first change to a row after a snapshot copies the row, so the
+     * snapshot keeps the old version; later changes in the same epoch
+     * update the copy in place.
+     */
+    public void changeEntry(int i, int j, double x) {
+        checkBounds(i, j, "changeEntry()");
+        ReentrantLock lock = locks[i & mask];
+        lock.lock();
+        try {
+            Row head = rows.get(i);
+            int k = head == null ? -1 : Arrays.binarySearch(head.cols, 0, head.size, j);
+            if (k < 0 && x == 0) {
+                return;
+            }
+
+            // No snapshot can see a version from the current epoch
+            Row row = head;
+            if (head == null || head.stamp != epoch) {
+                row = copyRow(head, k < 0 ? 1 : 0);
+
+                // Mark the row before pruning, so a snapshot closing
+                // meanwhile either finds the mark or is missed by prune()
+                retained.add(i);
+                prune(row);
+                if (row.older == null) {
+                    retained.remove(i);
+                }
+            }
+
+            if (k >= 0) {
+                if (x != 0) {
+                    row.vals[k] = x;
+                }
+                else {
+                    System.arraycopy(row.cols, k + 1, row.cols, k, row.size - k - 1);
+                    System.arraycopy(row.vals, k + 1, row.vals, k, row.size - k - 1);
+                    row.size--;
+                    nnz.decrement();
+                }
+            }
+            else {
+                k = -(k + 1);
+                if (row.size == row.cols.length) {
+                    int capacity = Math.max(4, row.size + (row.size >> 1));
+                    row.cols = Arrays.copyOf(row.cols, capacity);
+                    row.vals = Arrays.copyOf(row.vals, capacity);
+                }
+                System.arraycopy(row.cols, k, row.cols, k + 1, row.size - k);
+                System.arraycopy(row.vals, k, row.vals, k + 1, row.size - k);
+                row.cols[k] = j;
+                row.vals[k] = x;
+                row.size++;
+                nnz.increment();
+            }
+
+            // Publish the finished copy
+            if (row != head) {
+                rows.set(i, row);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Returns a view of the matrix as it is now, in O(stripes) whatever
+     * the size of the matrix. The view is not affected by later writes.
+     * Close it when done so the row versions only it can see are
+     * reclaimed.
+     */
+    public Snapshot snapshot() {
+        // Always lock the stripes in the same order, so two snapshots
+        // can't deadlock
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            long version = epoch++;
+            open.merge(version, 1, Integer::sum);
+            return new Snapshot(version);
+        }
+        finally {
+            for (int s = locks.length - 1; s >= 0; s--) {
+                locks[s].unlock();
+            }
+        }
+    }
+
+    /*
+     * Returns a Matrix holding the entries as they are now
+     */
+    public Matrix toMatrix() {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.toMatrix();
+        }
+    }
+
+    /*
+     * A read only view of a ConcurrentMatrix at one moment. Reads take no
+     * locks, so any number of threads may share a snapshot.
+     */
+    public class Snapshot implements AutoCloseable {
+        private final long version;
+        private volatile boolean closed = false;
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+
+        /*
+         * Returns dimension of matrix (n)
+         */
+        public int getSize() {
+            return n;
+        }
+
+        /*
+         * Returns the entry at (i, j) when the snapshot was taken
+         */
+        public double getEntry(int i, int j) {
+            checkBounds(i, j, "getEntry()");
+            return find(row(i), j);
+        }
+
+        /*
+         * Returns number of non zero entries in row i
+         */
+        public int getRowNNZ(int i) {
+            if (i < 1 || i > n) {
+                throw new IndexOutOfBoundsException("ConcurrentMatrix: getRowNNZ() outside of bounds");
+            }
+            Row row = row(i);
+            return row == null ? 0 : row.size;
+        }
+
+        /*
+         * Calls visitor once for every non zero entry, in row major order
+         */
+        public void forEachEntry(Matrix.EntryVisitor visitor) {
+            for (int i = 1; i <= n; i++) {
+                Row row = row(i);
+                for (int k = 0; row != null && k < row.size; k++) {
+                    visitor.visit(i, row.cols[k], row.vals[k]);
+                }
+            }
+        }
+
+        /*
+         * Returns a Matrix holding the snapshot's entries, for mult() and
+         * the other Matrix operations
+         */
+        public Matrix toMatrix() {
+            Row[] versions = new Row[n + 1];
+            int total = 0;
+            for (int i = 1; i <= n; i++) {
+                versions[i] = row(i);
+                if (versions[i] != null) {
+                    total += versions[i].size;
+                }
+            }
+
+            int[] rowPtr = new int[n + 1];
+            int[] colIdx = new int[total];
+            double[] values = new double[total];
+            int count = 0;
+            for (int i = 1; i <= n; i++) {
+                Row row = versions[i];
+                if (row != null) {
+                    System.arraycopy(row.cols, 0, colIdx, count, row.size);
+                    System.arraycopy(row.vals, 0, values, count, row.size);
+                    count += row.size;
+                }
+                rowPtr[i] = count;
+            }
+            return new Matrix(n, rowPtr, colIdx, values);
+        }
+
+        /*
+         * Releases the snapshot. It can't be read afterwards.
+         */
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (open.compute(version, (key, count) -> count == 1 ? null : count - 1) == null) {
+                reclaim();
+            }
+        }
+
+        /*
+         * Newest version of row i written at or before this snapshot
+         */
+        private Row row(int i) {
+            if (closed) {
+                throw new IllegalStateException("ConcurrentMatrix: snapshot is closed");
+            }
+            Row row = rows.get(i);
+            while (row != null && row.stamp > version) {
+                row = row.older;
+            }
+            return row;
+        }
+    }
+
+    /*
+     * Returns a new version of row stamped with the current epoch, with
+     * room for extra more entries
+     */
+    private Row copyRow(Row row, int extra) {
+        int size = row == null ? 0 : row.size;
+        Row copy = new Row(epoch, row, Math.max(4, size + extra));
+        if (row != null) {
+            System.arraycopy(row.cols, 0, copy.cols, 0, size);
+            System.arraycopy(row.vals, 0, copy.vals, 0, size);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /*
+     * Unlinks the versions behind row that no open snapshot reads. Each
+     * snapshot reads the newest version at or before its epoch, so a
+     * version is kept only if some snapshot was taken between its own
+     * epoch and that of the version that replaced it. Writes and closing
+     * snapshots both prune, so the chain is never longer than one more
+     * than the number of open snapshots.
+     */
+    private void prune(Row row) {
+        Row newer = row;
+        while (newer.older != null) {
+            Long reader = open.ceilingKey(newer.older.stamp);
+            if (reader == null || reader >= newer.stamp) {
+                newer.older = newer.older.older;
+            }
+            else {
+                newer = newer.older;
+            }
+        }
+    }
+
+    /*
+     * Prunes every row that still holds old versions, once a snapshot
+     * has closed. Costs one stripe lock per such row.
+     */
+    private void reclaim() {
+        for (Integer i : retained) {
+            ReentrantLock lock = locks[i & mask];
+            lock.lock();
+            try {
+                Row head = rows.get(i);
+                prune(head);
+                if (head.older == null) {
+                    retained.remove(i);
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Number of versions row i holds, newest included
+     */
+    int versions(int i) {
+        int count = 0;
+        for (Row row = rows.get(i); row != null; row = row.older) {
+            count++;
+        }
+        return count;
+    }
+
+    private static double find(Row row, int j) {
+        if (row == null) {
+            return 0;
+        }
+        int k = Arrays.binarySearch(row.cols, 0, row.size, j);
+        return k >= 0 ? row.vals[k] : 0;
+    }
+
+    private void checkBounds(int i, int j, String method) {
+        if (i < 1 || j < 1 || i > n || j > n) {
+            throw new IndexOutOfBoundsException("ConcurrentMatrix: " + method + " outside of bounds");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * ConcurrentMatrixTest.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Unit tests for ConcurrentMatrix.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+
+public class ConcurrentMatrixTest {
+    ConcurrentMatrix m;
+
+    @Before
+    public void setup() {
+        this.m = new ConcurrentMatrix(3);
+    }
+
+    @Test
+    public void changeEntry() {
+        m.changeEntry(3, 2, 3);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(2, 2, 5);
+        m.changeEntry(2, 2, 0);
+        m.changeEntry(2, 1, 0);
+        assertEquals(3, m.getNNZ());
+        assertEquals(1, m.getEntry(1, 3), 0);
+        assertEquals(0, m.getEntry(2, 2), 0);
+        assertEquals("1: (1, 2.0) (3, 1.0)\n3: (2, 3.0)\n", m.toMatrix().toString());
+    }
+
+    @Test
+    public void toMatrixIsCopy() {
+        m.changeEntry(1, 1, 2);
+        Matrix s = m.toMatrix();
+        m.changeEntry(1, 1, 4);
+        assertEquals(2, s.getEntry(1, 1), 0);
+        assertEquals(4, m.getEntry(1, 1), 0);
+    }
+
+    @Test
+    public void snapshotIsolation() {
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(2, 3, 1);
+        try (ConcurrentMatrix.Snapshot first = m.snapshot()) {
+            m.changeEntry(1, 1, 4);
+            m.changeEntry(1, 2, 5);
+            m.changeEntry(2, 3, 0);
+            try (ConcurrentMatrix.Snapshot second = m.snapshot()) {
+                m.changeEntry(1, 1, 6);
+                m.changeEntry(3, 3, 7);
+
+                assertEquals(2, first.getEntry(1, 1), 0);
+                assertEquals(0, first.getEntry(1, 2), 0);
+                assertEquals(1, first.getRowNNZ(2));
+                assertEquals("1: (1, 2.0)\n2: (3, 1.0)\n", first.toMatrix().toString());
+
+                assertEquals(4, second.getEntry(1, 1), 0);
+                assertEquals("1: (1, 4.0) (2, 5.0)\n", second.toMatrix().toString());
+            }
+            assertEquals(2, first.getEntry(1, 1), 0);
+
+            // Writes after the second snapshot closed may prune its versions
+            m.changeEntry(1, 1, 8);
+            assertEquals(2, first.getEntry(1, 1), 0);
+            assertEquals(0, first.getEntry(3, 3), 0);
+        }
+        assertEquals("1: (1, 8.0) (2, 5.0)\n3: (3, 7.0)\n", m.toMatrix().toString());
+    }
+
+    @Test
+    public void closeReclaims() {
+        ConcurrentMatrix.Snapshot[] snapshots = new ConcurrentMatrix.Snapshot[20];
+        for (int s = 0; s < snapshots.length; s++) {
+            m.changeEntry(2, 2, s + 1);
+            m.changeEntry(3, 1, s + 1);
+            snapshots[s] = m.snapshot();
+        }
+        m.changeEntry(2, 2, 100);
+        m.changeEntry(3, 1, 100);
+        assertEquals(21, m.versions(2));
+
+        // Closing from the middle frees what only that snapshot read
+        snapshots[10].close();
+        assertEquals(20, m.versions(2));
+        assertEquals(10, snapshots[9].getEntry(2, 2), 0);
+        assertEquals(12, snapshots[11].getEntry(2, 2), 0);
+
+        for (ConcurrentMatrix.Snapshot snapshot : snapshots) {
+            snapshot.close();
+        }
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(m.versions(i) <= 1);
+        }
+        assertEquals(100, m.getEntry(2, 2), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedSnapshot() {
+        ConcurrentMatrix.Snapshot s = m.snapshot();
+        s.close();
+        s.getEntry(1, 1);
+    }
+
+    @Test
+    public void manyWriters() throws InterruptedException {
+        int size = 200;
+        m = new ConcurrentMatrix(size, 8);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int first = t;
+            writers[t] = new Thread(() -> {
+                for (int k = first; k < 20000; k += writers.length) {
+                    m.changeEntry(1 + (k * 37) % size, 1 + (k * 53) % size, k % 7);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // Each position is only ever written by one thread, so the result
+        // is the same as writing everything in order
+        Matrix expected = new Matrix(size);
+        for (int k = 0; k < 20000; k++) {
+            expected.changeEntry(1 + (k * 37) % size, 1 + (k * 53) % size, k % 7);
+        }
+        assertTrue(expected.equals(m.toMatrix()));
+        assertEquals(expected.getNNZ(), m.getNNZ());
+    }
+
+    @Test
+    public void readersDuringWrites() throws InterruptedException {
+        // The writer sets (1, 1) to k and then (2, 2) to k, so any consistent
+        // view has (1, 1) equal to (2, 2) or one ahead of it
+        m = new ConcurrentMatrix(2, 2);
+        Thread writer = new Thread(() -> {
+            for (int k = 1; k <= 20000; k++) {
+                m.changeEntry(1, 1, k);
+                m.changeEntry(2, 2, k);
+            }
+        });
+        writer.start();
+        boolean consistent = true, stable = true;
+        while (writer.isAlive()) {
+            try (ConcurrentMatrix.Snapshot s = m.snapshot()) {
+                double first = s.getEntry(1, 1), second = s.getEntry(2, 2);
+                consistent &= first == second || first == second + 1;
+                Thread.yield();
+                stable &= s.getEntry(1, 1) == first && s.getEntry(2, 2) == second;
+            }
+        }
+        writer.join();
+        assertTrue(consistent);
+        assertTrue(stable);
+        assertEquals("1: (1, 20000.0)\n2: (2, 20000.0)\n", m.toMatrix().toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        m.changeEntry(4, 1, 1);
+    }
+}
@@ -5,13 +5,47 @@
  * Implements a doubly linked list of Objects.
  */
 
+import java.io.IOException;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class List implements Iterable<Object> {
 
     private int prevCount = 0, nextCount = 0;
     private Node current = null, front = null, back = null;
 
+    // Characters writeTo() collects before handing them to its output
+    private static final int WRITE_BATCH = 8192;
+
+    // moveTo() walks this far before building the index
+    private static final int WALK_LIMIT = 32;
+
+    // Skip list over the nodes for positional access, built by buildIndex()
+    // or the first time moveTo() has to go far and kept up to date by every
+    // edit after that. width counts the nodes stepped over to reach right, and
+    // head is the top level's head, standing just before the front at
+    // index -1, or null while there is no index.
+    private class IndexNode {
+        Node node;
+        IndexNode right, down;
+        int width;
+
+        IndexNode(Node node, IndexNode down) {
+            this.node = node;
+            this.down = down;
+        }
+    }
+
+    private IndexNode head = null;
+    private int levels = 0;
+
+    // Unlinked nodes kept for later inserts, chained through next. Off
+    // unless setPoolLimit() is called.
+    private Node pool = null;
+    private int poolSize = 0, poolLimit = 0;
+
     // Node object for data
     class Node {
         public Node next = null, prev = null;
@@ -67,6 +101,31 @@ public class List implements Iterable<Object> {
         }
     }
 
+    /*
+     * Returns the element at index i without moving the cursor. Never
+     * changes the list, so several threads may call it at once. O(log n)
+     * while the list has an index, and a walk from the nearest of the
+     * cursor and the ends otherwise.
+     */
+    public Object get(int i) {
+        if (i < 0 || i >= length()) {
+            throw new IndexOutOfBoundsException("List: get() index out of range");
+        }
+        return nodeAt(i, false).data;
+    }
+
+    /*
+     * Builds the index get(int) uses, if there isn't one, in O(n). Edits
+     * at the cursor keep it up to date, while clear(), sort() and the calls
+     * that move nodes between lists drop it. Call before sharing the list
+     * with reading threads.
+     */
+    public void buildIndex() {
+        if (head == null) {
+            makeIndex();
+        }
+    }
+
     public boolean equals(Object o) {
         // True if they are the same object
         if (o == this) {
@@ -86,12 +145,12 @@ public class List implements Iterable<Object> {
             return false;
         }
 
-        for (this.moveFront(), l.moveFront();
-                this.index() != -1 && l.index() != -1;
-                this.moveNext(), l.moveNext()) {
+        // Walk the nodes directly so neither cursor moves
+        Node a = this.front, b = l.front;
+        for (int i = 0; i < length(); i++, a = a.next, b = b.next) {
 
             // Early exit if possible
-            if (!this.get().equals(l.get())) {
+            if (!a.data.equals(b.data)) {
                 return false;
             }
         }
@@ -102,12 +161,25 @@ public class List implements Iterable<Object> {
 
     // Mutability
     public void clear() {
-        // TODO this probably leaks memory
-        prevCount = 0;
-        nextCount = 0;
-        current = null;
-        front = null;
-        back = null;
+        // Leave the whole chain to the garbage collector rather than the
+        // pool, which would have to visit every node to drop its data
+        forget();
+    }
+
+    /*
+     * Keeps up to limit deleted nodes for reuse by later inserts, which
+     * saves churn-heavy lists an allocation per insert. 0, the default,
+     * turns pooling off and lets go of the pooled nodes.
+     */
+    public void setPoolLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("List: pool limit must not be negative");
+        }
+        poolLimit = limit;
+        while (poolSize > limit) {
+            pool = pool.next;
+            poolSize--;
+        }
     }
 
     public void moveFront() {
@@ -126,9 +198,21 @@ public class List implements Iterable<Object> {
         nextCount = 1;
     }
 
+    /*
+     * Moves the cursor to index i in O(log n)
+     */
+    public void moveTo(int i) {
+        if (i < 0 || i >= length()) {
+            throw new IndexOutOfBoundsException("List: moveTo() index out of range");
+        }
+        current = nodeAt(i, true);
+        nextCount = length() - i;
+        prevCount = i;
+    }
+
     public void movePrev() {
         if (current != null) {
-            current = current.prev;
+            current = current == front ? null : current.prev;
             prevCount--;
             nextCount++;
         }
@@ -136,7 +220,7 @@ public class List implements Iterable<Object> {
 
     public void moveNext() {
         if (current != null) {
-            current = current.next;
+            current = current == back ? null : current.next;
             prevCount++;
             nextCount--;
         }
@@ -147,10 +231,11 @@ public class List implements Iterable<Object> {
             createCurrent(data);
         }
         else {
-            front.prev = new Node(data);
+            front.prev = obtain(data);
             front.prev.next = front;
             front = front.prev;
             prevCount++;
+            indexInsert(0, front);
         }
     }
 
@@ -159,10 +244,11 @@ public class List implements Iterable<Object> {
             createCurrent(data);
         }
         else {
-            back.next = new Node(data);
+            back.next = obtain(data);
             back.next.prev = back;
             back = back.next;
             nextCount++;
+            indexInsert(length() - 1, back);
         }
     }
 
@@ -171,8 +257,8 @@ public class List implements Iterable<Object> {
             createCurrent(data);
         }
         else {
-            Node tmp = current.prev;
-            current.prev = new Node(data);
+            Node tmp = current == front ? null : current.prev;
+            current.prev = obtain(data);
             current.prev.prev = tmp;
 
             // If the previous value exists, correct its next
@@ -185,6 +271,7 @@ public class List implements Iterable<Object> {
             }
 
             current.prev.next = current;
+            indexInsert(prevCount, current.prev);
             prevCount++;
         }
     }
@@ -194,8 +281,8 @@ public class List implements Iterable<Object> {
             createCurrent(data);
         }
         else {
-            Node tmp = current.next;
-            current.next = new Node(data);
+            Node tmp = current == back ? null : current.next;
+            current.next = obtain(data);
             current.next.next = tmp;
 
             // If next value exists, correct its prev
@@ -209,6 +296,7 @@ public class List implements Iterable<Object> {
 
             current.next.prev = current;
             nextCount++;
+            indexInsert(prevCount + 1, current.next);
         }
     }
 
@@ -217,16 +305,28 @@ public class List implements Iterable<Object> {
             throw new IndexOutOfBoundsException("List: deleteFront() from empty list");
         }
 
+        indexDelete(0);
+
         // Clear current if it's the front
-        if (current == front) {
+        boolean wasCurrent = current == front;
+        if (wasCurrent) {
             current = null;
         }
 
-        // Move front
-        front = front.next;
+        // Move front, emptying the list if it was the only node
+        Node old = front;
+        front = front == back ? null : front.next;
+        if (front == null) {
+            back = null;
+        }
+        else {
+            front.prev = null;
+        }
+        recycle(old);
 
-        // Update counts
-        if (front == current) {
+        // Update counts. The front was behind the cursor unless it was
+        // the cursor itself, or there is no cursor to be behind.
+        if (wasCurrent || current == null) {
             nextCount--;
         }
         else {
@@ -239,13 +339,23 @@ public class List implements Iterable<Object> {
             throw new IndexOutOfBoundsException("List: deleteBack() from empty list");
         }
 
+        indexDelete(length() - 1);
+
         // Clear current if necessary
         if (current == back) {
             current = null;
         }
 
-        // Update back
-        back = back.prev;
+        // Update back, emptying the list if it was the only node
+        Node old = back;
+        back = back == front ? null : back.prev;
+        if (back == null) {
+            front = null;
+        }
+        else {
+            back.next = null;
+        }
+        recycle(old);
 
         // Remove nextcount (back is always next)
         nextCount--;
@@ -255,82 +365,508 @@ public class List implements Iterable<Object> {
         if (length() <= 0 || length() < 0) {
             throw new IndexOutOfBoundsException("List: delete() from empty list");
         }
-        // Close previous
-        if (current.prev != null) {
-            current.prev.next = current.next;
+        if (current == null) {
+            throw new IndexOutOfBoundsException("List: delete() from null cursor");
         }
 
-        // Close next
-        if (current.next != null) {
-            current.next.prev = current.prev;
-        }
+        Node prev = current == front ? null : current.prev;
+        Node next = current == back ? null : current.next;
+        indexDelete(prevCount);
 
-        // Update front if necessary
-        if (current == front) {
-            front = current.next;
+        // Close previous, or update front if this was it
+        if (prev != null) {
+            prev.next = next;
+        }
+        else {
+            front = next;
         }
 
-        // Update back if necessary
-        if (current == back) {
-            back = current.prev;
+        // Close next, or update back if this was it
+        if (next != null) {
+            next.prev = prev;
+        }
+        else {
+            back = prev;
         }
 
         // Clear current
+        recycle(current);
         current = null;
 
         // Current was 'next' so decrease nextcount
         nextCount--;
     }
 
+    /*
+     * Moves all of other's elements in after the cursor in O(1), by
+     * relinking its nodes, and leaves other empty. The cursor stays on the
+     * same element.
+     */
+    public void spliceAfterCursor(List other) {
+        if (other == this) {
+            throw new IllegalArgumentException("List: spliceAfterCursor() of a list into itself");
+        }
+        if (other.length() == 0) {
+            return;
+        }
+        if (length() == 0) {
+            moveAll(other);
+            return;
+        }
+        if (current == null) {
+            throw new IndexOutOfBoundsException("List: spliceAfterCursor() from null cursor");
+        }
+
+        dropIndex();
+        Node after = current.next;
+        current.next = other.front;
+        other.front.prev = current;
+        other.back.next = after;
+        if (after != null) {
+            after.prev = other.back;
+        }
+        else {
+            back = other.back;
+        }
+        nextCount += other.length();
+        other.forget();
+    }
+
+    /*
+     * Cuts the list after the cursor in O(1) and returns the tail. The
+     * cursor ends up on the back of this list, and on the front of the
+     * tail.
+     */
+    public List splitAtCursor() {
+        if (current == null) {
+            throw new IndexOutOfBoundsException("List: splitAtCursor() from null cursor");
+        }
+        List tail = new List();
+        if (current == back) {
+            return tail;
+        }
+
+        dropIndex();
+        tail.front = current.next;
+        tail.back = back;
+        tail.front.prev = null;
+        tail.current = tail.front;
+        tail.nextCount = nextCount - 1;
+        current.next = null;
+        back = current;
+        nextCount = 1;
+        return tail;
+    }
+
+    /*
+     * Moves all of other's elements onto the back in O(1) and leaves other
+     * empty. An empty list ends up with its cursor on the front, as if
+     * they had been appended.
+     */
+    public void moveAll(List other) {
+        if (other == this) {
+            throw new IllegalArgumentException("List: moveAll() of a list into itself");
+        }
+        if (other.length() == 0) {
+            return;
+        }
+
+        dropIndex();
+        if (length() == 0) {
+            front = other.front;
+            current = front;
+            prevCount = 0;
+            nextCount = 0;
+        }
+        else {
+            back.next = other.front;
+            other.front.prev = back;
+        }
+        back = other.back;
+        nextCount += other.length();
+        other.forget();
+    }
+
+    /*
+     * Sorts the list by order with a stable bottom-up merge sort, in
+     * O(n log n). The existing nodes are relinked rather than copied, so
+     * nothing is allocated past a small array of run heads. The cursor
+     * stays on the same element.
+     */
+    public void sort(Comparator<Object> order) {
+        if (length() < 2) {
+            return;
+        }
+        dropIndex();
+
+        // Bottom-up, but in one pass over the list: runs[k] holds a sorted
+        // run of 2^k nodes, and each node carries up through the full
+        // slots like a binary counter, merging as it goes. This keeps the
+        // merges on recently touched nodes, instead of walking the whole
+        // list once per run width.
+        Node[] runs = new Node[32];
+        int top = 0;
+        back.next = null;
+        for (Node node = front; node != null; ) {
+            Node run = node;
+            node = node.next;
+            run.next = null;
+            int k = 0;
+            for (; runs[k] != null; k++) {
+                run = merge(runs[k], run, order);
+                runs[k] = null;
+            }
+            runs[k] = run;
+            top = Math.max(top, k + 1);
+        }
+
+        // Merge what's left, the shorter, later runs first
+        Node sorted = null;
+        for (int k = 0; k < top; k++) {
+            if (runs[k] != null) {
+                sorted = sorted == null ? runs[k] : merge(runs[k], sorted, order);
+            }
+        }
+
+        // Fix the prev links, and find the cursor's new index on the way
+        int n = length(), index = 0, i = 0;
+        Node prev = null;
+        for (Node node = sorted; node != null; prev = node, node = node.next, i++) {
+            node.prev = prev;
+            if (node == current) {
+                index = i;
+            }
+        }
+        front = sorted;
+        back = prev;
+        prevCount = index;
+        nextCount = n - index;
+    }
+
+    /*
+     * Merges sorted chains a and b, which come before and after each
+     * other in the list, taking from a on ties so the sort is stable
+     */
+    private static Node merge(Node a, Node b, Comparator<Object> order) {
+        Node head;
+        if (order.compare(b.data, a.data) < 0) {
+            head = b;
+            b = b.next;
+        }
+        else {
+            head = a;
+            a = a.next;
+        }
+        Node tail = head;
+        while (a != null && b != null) {
+            if (order.compare(b.data, a.data) < 0) {
+                tail.next = b;
+                tail = b;
+                b = b.next;
+            }
+            else {
+                tail.next = a;
+                tail = a;
+                a = a.next;
+            }
+        }
+        tail.next = a != null ? a : b;
+        return head;
+    }
+
     // Convert the list to a string
     public String toString() {
-        String s = "";
-        for (Object d : this) {
-            s += d.toString();
-            if (this.current != null) {
-                s += " ";
+        StringBuilder s = new StringBuilder();
+        Node node = front;
+        for (int i = 0; i < length(); i++, node = node.next) {
+            if (i > 0) {
+                s.append(' ');
             }
+            s.append(node.data);
         }
-        return s;
+        return s.toString();
+    }
+
+    // Write the same text as toString() to out, in batches through one
+    // reused buffer rather than as one big string
+    public void writeTo(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(WRITE_BATCH + 64);
+        Node node = front;
+        for (int i = 0; i < length(); i++, node = node.next) {
+            if (i > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(node.data);
+            if (buffer.length() >= WRITE_BATCH) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        out.append(buffer);
     }
 
     // Private utilities
+    /*
+     * A node holding data, from the pool when it has one
+     */
+    private Node obtain(Object data) {
+        if (pool == null) {
+            return new Node(data);
+        }
+        Node node = pool;
+        pool = node.next;
+        poolSize--;
+        node.next = null;
+        node.prev = null;
+        node.data = data;
+        return node;
+    }
+
+    /*
+     * Pools a node that was just unlinked, dropping its data, unless the
+     * pool is full
+     */
+    private void recycle(Node node) {
+        if (poolSize >= poolLimit) {
+            return;
+        }
+        node.data = null;
+        node.prev = null;
+        node.next = pool;
+        pool = node;
+        poolSize++;
+    }
+
+    /*
+     * Empties the list in O(1) without pooling its nodes, for clear() and
+     * once another list has taken them over
+     */
+    private void forget() {
+        dropIndex();
+        prevCount = 0;
+        nextCount = 0;
+        current = null;
+        front = null;
+        back = null;
+    }
+
     private void createCurrent(Object data) {
-        current = new Node(data);
+        dropIndex();
+        current = obtain(data);
         front = current;
         back = current;
-        nextCount++;
+
+        // An undefined cursor may have left the counts split any which way
+        prevCount = 0;
+        nextCount = 1;
     }
 
-    // Iteration
-    private class ListIterator implements Iterator<Object> {
-        List list = null;
-        Node tmpCurrent = null;
-        int tmpPrevCount = -1, tmpNextCount = -1;
+    /*
+     * Finds the node at index i, walking from the cursor or an end when
+     * one is close and going through the index otherwise. Only builds a
+     * missing index if build is set, so reads leave the list alone.
+     */
+    private Node nodeAt(int i, boolean build) {
+        int fromFront = i, fromBack = length() - 1 - i;
+        int fromCursor = current == null ? Integer.MAX_VALUE : Math.abs(i - prevCount);
+        int closest = Math.min(fromCursor, Math.min(fromFront, fromBack));
+        if (closest > WALK_LIMIT && (head != null || build)) {
+            if (head == null) {
+                makeIndex();
+            }
+            return locate(i);
+        }
 
-        ListIterator(List list) {
-            this.list = list;
-            this.tmpCurrent = list.current;
-            this.tmpPrevCount = list.prevCount;
-            this.tmpNextCount = list.nextCount;
-            this.list.moveFront();
+        Node node;
+        if (closest == fromCursor) {
+            node = current;
+            for (int k = prevCount; k < i; k++) {
+                node = node.next;
+            }
+            for (int k = prevCount; k > i; k--) {
+                node = node.prev;
+            }
+        }
+        else if (closest == fromFront) {
+            node = front;
+            for (int k = 0; k < i; k++) {
+                node = node.next;
+            }
+        }
+        else {
+            node = back;
+            for (int k = length() - 1; k > i; k--) {
+                node = node.prev;
+            }
         }
+        return node;
+    }
 
-        public boolean hasNext() {
-            if (list.index() >= 0) {
-                return true;
+    /*
+     * Node at index i, through the index
+     */
+    private Node locate(int i) {
+        int pos = -1;
+        Node node = null;
+        for (IndexNode x = head; x != null; x = x.down) {
+            while (x.right != null && pos + x.width <= i) {
+                pos += x.width;
+                x = x.right;
+            }
+            node = x.node;
+        }
+
+        // Walk the last few nodes level 1 skips over
+        if (node == null) {
+            node = front;
+            pos = 0;
+        }
+        for (; pos < i; pos++) {
+            node = node.next;
+        }
+        return node;
+    }
+
+    /*
+     * Builds a balanced index: level L holds the nodes whose index + 1 is
+     * a multiple of 2^L
+     */
+    private void makeIndex() {
+        IndexNode level = new IndexNode(null, null), last = level;
+        int lastPos = -1;
+        Node node = front;
+        for (int i = 0; i < length(); i++, node = node.next) {
+            if (i % 2 == 1) {
+                last.right = new IndexNode(node, null);
+                last.width = i - lastPos;
+                last = last.right;
+                lastPos = i;
+            }
+        }
+
+        head = null;
+        levels = 0;
+        while (level.right != null) {
+            head = level;
+            levels++;
+
+            // Every second entry of this level goes up to the next
+            IndexNode up = new IndexNode(null, level);
+            last = up;
+            lastPos = -1;
+            int pos = -1;
+            boolean take = false;
+            for (IndexNode x = level; x.right != null; ) {
+                pos += x.width;
+                x = x.right;
+                if (take) {
+                    last.right = new IndexNode(x.node, x);
+                    last.width = pos - lastPos;
+                    last = last.right;
+                    lastPos = pos;
+                }
+                take = !take;
+            }
+            level = up;
+        }
+    }
+
+    /*
+     * Records that node was just linked in at index i
+     */
+    private void indexInsert(int i, Node node) {
+        if (head == null) {
+            return;
+        }
+
+        // Give the node a tower of random height, each level half as likely
+        int height = Integer.numberOfTrailingZeros(~ThreadLocalRandom.current().nextInt());
+        height = Math.min(height, levels + 1);
+        if (height > levels) {
+            head = new IndexNode(null, head);
+            levels++;
+        }
+
+        // On each level find the last entry before i. The entry after it
+        // is now one further away, unless the new node goes in between.
+        int pos = -1, level = levels;
+        IndexNode above = null;
+        for (IndexNode x = head; x != null; x = x.down, level--) {
+            while (x.right != null && pos + x.width < i) {
+                pos += x.width;
+                x = x.right;
+            }
+            if (level <= height) {
+                IndexNode entry = new IndexNode(node, null);
+                entry.right = x.right;
+                entry.width = pos + x.width + 1 - i;
+                x.right = entry;
+                x.width = i - pos;
+                if (above != null) {
+                    above.down = entry;
+                }
+                above = entry;
             }
             else {
-                list.current = tmpCurrent;
-                list.prevCount = tmpPrevCount;
-                list.nextCount = tmpNextCount;
-                return false;
+                x.width++;
             }
         }
+    }
+
+    /*
+     * Records that the node at index i is being unlinked
+     */
+    private void indexDelete(int i) {
+        int pos = -1;
+        for (IndexNode x = head; x != null; x = x.down) {
+            while (x.right != null && pos + x.width < i) {
+                pos += x.width;
+                x = x.right;
+            }
+            if (x.right != null && pos + x.width == i) {
+                x.width += x.right.width - 1;
+                x.right = x.right.right;
+            }
+            else {
+                x.width--;
+            }
+        }
+
+        // Drop levels left empty
+        while (head != null && head.right == null) {
+            head = head.down;
+            levels--;
+        }
+    }
+
+    private void dropIndex() {
+        head = null;
+        levels = 0;
+    }
+
+    // Iteration. The iterator keeps its own position and never touches
+    // the list's cursor, so any number can read the list at once as long
+    // as nothing modifies it.
+    private class ListIterator implements Iterator<Object> {
+        Node node = null;
+        int remaining = 0;
+
+        ListIterator(List list) {
+            this.node = list.front;
+            this.remaining = list.length();
+        }
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
 
         public Object next() {
-            Object toReturn = list.get();
-            list.moveNext();
+            if (remaining <= 0) {
+                throw new NoSuchElementException("List: next() past the end");
+            }
+            Object toReturn = node.data;
+            node = node.next;
+            remaining--;
             return toReturn;
         }
     }
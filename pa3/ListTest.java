@@ -10,6 +10,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import org.junit.Test;
 import org.junit.Before;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ListTest {
     List l;
@@ -287,6 +291,53 @@ public class ListTest {
         assertEquals("3 1 2", this.l.toString());
     }
 
+    @Test
+    public void writeTo() throws java.io.IOException {
+        this.l.append(1);
+        this.l.append("two");
+        this.l.append(3.0);
+        this.l.moveFront();
+        this.l.moveNext();
+        StringBuilder out = new StringBuilder();
+        this.l.writeTo(out);
+        assertEquals("1 two 3.0", out.toString());
+        assertEquals(this.l.toString(), out.toString());
+        assertEquals(1, this.l.index());
+    }
+
+    @Test
+    public void toStringAfterDeleteBack() {
+        this.l.append(1);
+        this.l.append(2);
+        this.l.append(3);
+        this.l.deleteBack();
+        assertEquals("1 2", this.l.toString());
+    }
+
+    @Test
+    public void readsKeepCursor() {
+        this.l.append(1);
+        this.l.append(2);
+        this.l.append(3);
+        this.l.moveFront();
+        this.l.moveNext();
+
+        List other = new List();
+        other.append(1);
+        other.append(2);
+        other.append(3);
+        assertTrue(this.l.equals(other));
+        int sum = 0;
+        for (Object o : this.l) {
+            sum += (Integer) o;
+            break;
+        }
+        assertEquals(1, sum);
+        assertEquals(1, this.l.index());
+        assertEquals(2, this.l.get());
+        assertEquals(0, other.index());
+    }
+
     @Test
     public void frontIsCorrect() {
         this.l.append(1);
@@ -499,6 +550,194 @@ public class ListTest {
         assertEquals(5, this.l.back());
     }
 
+    @Test
+    public void positionalAccess() {
+        // Enough elements that far lookups go through the index, with
+        // edits all over once it's built
+        ArrayList<Object> model = new ArrayList<Object>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            this.l.append(i);
+            model.add(i);
+        }
+        for (int step = 0; step < 5000; step++) {
+            int i = random.nextInt(model.size());
+            switch (random.nextInt(6)) {
+            case 0:
+                this.l.moveTo(i);
+                this.l.insertBefore(step);
+                model.add(i, step);
+                break;
+            case 1:
+                this.l.moveTo(i);
+                this.l.insertAfter(step);
+                model.add(i + 1, step);
+                break;
+            case 2:
+                this.l.moveTo(i);
+                this.l.delete();
+                model.remove(i);
+                break;
+            case 3:
+                this.l.prepend(step);
+                model.add(0, step);
+                break;
+            case 4:
+                this.l.append(step);
+                model.add(step);
+                break;
+            default:
+                if (random.nextBoolean()) {
+                    this.l.deleteFront();
+                    model.remove(0);
+                }
+                else {
+                    this.l.deleteBack();
+                    model.remove(model.size() - 1);
+                }
+            }
+            i = random.nextInt(model.size());
+            assertEquals(model.get(i), this.l.get(i));
+            this.l.moveTo(i);
+            assertEquals(i, this.l.index());
+            assertEquals(model.get(i), this.l.get());
+        }
+        assertEquals(model.size(), this.l.length());
+        for (int i = 0; i < model.size(); i++) {
+            assertEquals(model.get(i), this.l.get(i));
+        }
+    }
+
+    @Test
+    public void concurrentGet() throws InterruptedException {
+        for (int i = 0; i < 2000; i++) {
+            this.l.append(i);
+        }
+
+        // Readers share the list first without an index, then with one
+        assertEquals(0, readConcurrently(8));
+        this.l.buildIndex();
+        assertEquals(0, readConcurrently(8));
+    }
+
+    /*
+     * Reads every element of l with get(int), split across threads, and
+     * returns how many reads came back wrong
+     */
+    private int readConcurrently(int threads) throws InterruptedException {
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            readers[t] = new Thread(() -> {
+                for (int i = first; i < this.l.length(); i += threads) {
+                    if (!this.l.get(i).equals(i)) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return wrong.get();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void moveToOutOfRange() {
+        this.l.append(1);
+        this.l.moveTo(1);
+    }
+
+    @Test
+    public void pooledChurn() {
+        this.l.setPoolLimit(8);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 1; i <= 5; i++) {
+                this.l.append(i);
+            }
+            this.l.moveFront();
+            this.l.moveNext();
+            this.l.delete();
+            this.l.deleteFront();
+            this.l.deleteBack();
+            this.l.prepend(6);
+            this.l.moveBack();
+            this.l.insertBefore(7);
+            assertEquals("6 3 7 4", this.l.toString());
+            this.l.clear();
+            assertEquals(0, this.l.length());
+            assertEquals(-1, this.l.index());
+        }
+    }
+
+    @Test
+    public void clearReleasesElements() {
+        this.l.setPoolLimit(8);
+        Object element = new Object();
+        WeakReference<Object> ref = new WeakReference<Object>(element);
+        this.l.append(element);
+        this.l.append(2);
+        this.l.clear();
+        element = null;
+
+        // The pool must not keep the cleared elements reachable
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+        }
+        assertTrue(ref.get() == null);
+
+        // The list still works, pool and all
+        this.l.append(3);
+        this.l.deleteBack();
+        this.l.append(4);
+        assertEquals("4", this.l.toString());
+    }
+
+    @Test
+    public void spliceAndSplit() {
+        List other = new List();
+        for (int i = 1; i <= 3; i++) {
+            this.l.append(i);
+            other.append(i + 6);
+        }
+        this.l.moveFront();
+        this.l.spliceAfterCursor(other);
+        assertEquals(0, other.length());
+        assertEquals(0, this.l.index());
+        assertEquals("1 7 8 9 2 3", this.l.toString());
+
+        this.l.moveNext();
+        List tail = this.l.splitAtCursor();
+        assertEquals("1 7", this.l.toString());
+        assertEquals("8 9 2 3", tail.toString());
+        assertEquals(8, tail.get());
+
+        this.l.moveAll(tail);
+        this.l.append(4);
+        assertEquals(0, tail.length());
+        assertEquals("1 7 8 9 2 3 4", this.l.toString());
+    }
+
+    @Test
+    public void sort() {
+        int[] data = {5, -1, 3, 3, 9, 0, 3};
+        for (int x : data) {
+            this.l.append(x);
+        }
+        this.l.moveTo(3);
+        this.l.sort((a, b) -> Integer.compare(Math.floorMod((Integer) a, 2), Math.floorMod((Integer) b, 2)));
+        assertEquals("0 5 -1 3 3 9 3", this.l.toString());
+        assertEquals(4, this.l.index());
+        this.l.sort((a, b) -> Integer.compare((Integer) a, (Integer) b));
+        assertEquals("-1 0 3 3 3 5 9", this.l.toString());
+        assertEquals(3, this.l.index());
+        this.l.moveBack();
+        this.l.movePrev();
+        assertEquals(5, this.l.get());
+    }
+
     /*@Test
       public void NonEmpty_copy() {
       this.l.append(2);
@@ -0,0 +1,255 @@
+/*
+ * MappedMatrix.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * A read only sparse matrix read straight out of a file written by
+ * Matrix.save(), paged in by the operating system as it is used.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+public class MappedMatrix {
+    // Each section is mapped in windows of Matrix.MAP_CHUNK bytes. That is
+    // a multiple of 8, so no number straddles two windows, and number k
+    // of a section lives at k & MASK in window k >>> SHIFT.
+    private static final int INT_SHIFT = Long.numberOfTrailingZeros(Matrix.MAP_CHUNK) - 2;
+    private static final int DOUBLE_SHIFT = INT_SHIFT - 1;
+    private static final int INT_MASK = (1 << INT_SHIFT) - 1;
+    private static final int DOUBLE_MASK = (1 << DOUBLE_SHIFT) - 1;
+
+    private final Path path;
+    private final long size;
+    private final int n, nnz;
+    private final IntBuffer[] rowPtr, colIdx;
+    private final DoubleBuffer[] values;
+
+    private MappedMatrix(Path path, long size, int n, int nnz, IntBuffer[] rowPtr,
+            IntBuffer[] colIdx, DoubleBuffer[] values) {
+        this.path = path;
+        this.size = size;
+        this.n = n;
+        this.nnz = nnz;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    /*
+     * Maps a matrix written by Matrix.save(). Only the header and the
+     * file size are checked, so this takes the same short time for any
+     * size of matrix and reads nothing else until it is used. Call
+     * verify() to check the rest. The file must not change while the
+     * matrix is in use.
+     */
+    public static MappedMatrix map(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < Matrix.HEADER_BYTES + 8) {
+                throw new IOException("MappedMatrix: map() file is too short");
+            }
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, Matrix.HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != Matrix.MAGIC) {
+                throw new IOException("MappedMatrix: map() not a matrix file");
+            }
+            if (header.getInt(4) != Matrix.FORMAT_VERSION) {
+                throw new IOException("MappedMatrix: map() unsupported version " + header.getInt(4));
+            }
+            int n = header.getInt(8);
+            int nnz = header.getInt(12);
+            long rowPtrBytes = Matrix.padded(4L * (n + 1));
+            long colIdxBytes = Matrix.padded(4L * nnz);
+            if (n < 0 || nnz < 0
+                    || size != Matrix.HEADER_BYTES + rowPtrBytes + colIdxBytes + 8L * nnz + 8) {
+                throw new IOException("MappedMatrix: map() file size does not match its header");
+            }
+
+            // Mappings stay valid once the channel is closed
+            long position = Matrix.HEADER_BYTES;
+            IntBuffer[] rowPtr = mapInts(in, position, n + 1L);
+            position += rowPtrBytes;
+            IntBuffer[] colIdx = mapInts(in, position, nnz);
+            position += colIdxBytes;
+            DoubleBuffer[] values = mapDoubles(in, position, nnz);
+            return new MappedMatrix(path, size, n, nnz, rowPtr, colIdx, values);
+        }
+    }
+
+    /*
+     * Returns dimension of matrix (n)
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /*
+     * Returns number of non zero entries
+     */
+    public int getNNZ() {
+        return nnz;
+    }
+
+    /*
+     * Returns number of non zero entries in row i
+     */
+    public int getRowNNZ(int i) {
+        if (i < 1 || i > n) {
+            throw new IndexOutOfBoundsException("MappedMatrix: getRowNNZ() outside of bounds");
+        }
+        return rowPtr(i) - rowPtr(i - 1);
+    }
+
+    /*
+     * Returns the entry at (row, column), searching only that row
+     */
+    public double getEntry(int row, int column) {
+        if (row < 1 || column < 1 || row > n || column > n) {
+            throw new IndexOutOfBoundsException("MappedMatrix: getEntry() out of bounds");
+        }
+        int low = rowPtr(row - 1), high = rowPtr(row) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = colIdx(middle);
+            if (c < column) {
+                low = middle + 1;
+            }
+            else if (c > column) {
+                high = middle - 1;
+            }
+            else {
+                return value(middle);
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Calls visitor once for every non zero entry, in row major order
+     */
+    public void forEachEntry(Matrix.EntryVisitor visitor) {
+        int k = 0;
+        for (int i = 1; i <= n; i++) {
+            for (int end = rowPtr(i); k < end; k++) {
+                visitor.visit(i, colIdx(k), value(k));
+            }
+        }
+    }
+
+    /*
+     * Sets y to this matrix times the vector x, laid out as for
+     * Matrix.multiply(x, y)
+     */
+    public void multiply(double[] x, double[] y) {
+        if (x.length != n || y.length != n) {
+            throw new IndexOutOfBoundsException("MappedMatrix: multiply() dimensions are inequal");
+        }
+        if (x == y) {
+            throw new IllegalArgumentException("MappedMatrix: multiply() input and output are the same array");
+        }
+        int k = 0;
+        for (int i = 1; i <= n; i++) {
+            double sum = 0;
+            for (int end = rowPtr(i); k < end; k++) {
+                sum += value(k) * x[colIdx(k) - 1];
+            }
+            y[i - 1] = sum;
+        }
+    }
+
+    /*
+     * Reads the whole file to check its checksum and the invariants every
+     * other method relies on. Throws IOException if any fails.
+     */
+    public void verify() throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            CRC32C checksum = new CRC32C();
+            long body = size - 8;
+            for (long offset = 0; offset < body; offset += Matrix.MAP_CHUNK) {
+                long length = Math.min(Matrix.MAP_CHUNK, body - offset);
+                checksum.update(in.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+            ByteBuffer trailer = in.map(FileChannel.MapMode.READ_ONLY, body, 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (trailer.getLong(0) != checksum.getValue()) {
+                throw new IOException("MappedMatrix: verify() checksum mismatch");
+            }
+        }
+
+        if (rowPtr(0) != 0 || rowPtr(n) != nnz) {
+            throw new IOException("MappedMatrix: verify() row pointers are inconsistent");
+        }
+        for (int i = 1; i <= n; i++) {
+            int start = rowPtr(i - 1), end = rowPtr(i);
+            if (end < start || end > nnz) {
+                throw new IOException("MappedMatrix: verify() row pointers are inconsistent");
+            }
+            for (int k = start; k < end; k++) {
+                if (colIdx(k) < 1 || colIdx(k) > n
+                        || (k > start && colIdx(k) <= colIdx(k - 1))
+                        || value(k) == 0) {
+                    throw new IOException("MappedMatrix: verify() bad entry in row " + i);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns an ordinary Matrix with the same entries, loaded onto the
+     * heap and checked with Matrix.load()
+     */
+    public Matrix toMatrix() throws IOException {
+        return Matrix.load(path);
+    }
+
+    private int rowPtr(int i) {
+        return rowPtr[i >>> INT_SHIFT].get(i & INT_MASK);
+    }
+
+    private int colIdx(int k) {
+        return colIdx[k >>> INT_SHIFT].get(k & INT_MASK);
+    }
+
+    private double value(int k) {
+        return values[k >>> DOUBLE_SHIFT].get(k & DOUBLE_MASK);
+    }
+
+    /*
+     * Maps count ints starting at position, one window at a time
+     */
+    private static IntBuffer[] mapInts(FileChannel in, long position, long count)
+            throws IOException {
+        long bytes = 4L * count;
+        IntBuffer[] windows = new IntBuffer[(int) ((bytes + Matrix.MAP_CHUNK - 1) / Matrix.MAP_CHUNK)];
+        for (int w = 0; w < windows.length; w++) {
+            long offset = w * Matrix.MAP_CHUNK;
+            long length = Math.min(Matrix.MAP_CHUNK, bytes - offset);
+            windows[w] = in.map(FileChannel.MapMode.READ_ONLY, position + offset, length)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return windows;
+    }
+
+    /*
+     * Maps count doubles starting at position, one window at a time
+     */
+    private static DoubleBuffer[] mapDoubles(FileChannel in, long position, long count)
+            throws IOException {
+        long bytes = 8L * count;
+        DoubleBuffer[] windows = new DoubleBuffer[(int) ((bytes + Matrix.MAP_CHUNK - 1) / Matrix.MAP_CHUNK)];
+        for (int w = 0; w < windows.length; w++) {
+            long offset = w * Matrix.MAP_CHUNK;
+            long length = Math.min(Matrix.MAP_CHUNK, bytes - offset);
+            windows[w] = in.map(FileChannel.MapMode.READ_ONLY, position + offset, length)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        return windows;
+    }
+}
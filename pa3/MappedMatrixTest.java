@@ -0,0 +1,90 @@
+/*
+ * MappedMatrixTest.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Unit tests for MappedMatrix.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedMatrixTest {
+    Matrix m;
+    Path path;
+
+    @Before
+    public void setup() throws IOException {
+        m = new Matrix(5);
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 4, -1.5);
+        m.changeEntry(3, 2, 3e-9);
+        m.changeEntry(5, 5, 7);
+        path = Files.createTempFile("MappedMatrixTest", ".csr");
+        path.toFile().deleteOnExit();
+        m.save(path);
+    }
+
+    @Test
+    public void readsLikeMatrix() throws IOException {
+        MappedMatrix mapped = MappedMatrix.map(path);
+        assertEquals(5, mapped.getSize());
+        assertEquals(4, mapped.getNNZ());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(m.getRowNNZ(i), mapped.getRowNNZ(i));
+            for (int j = 1; j <= 5; j++) {
+                assertEquals(m.getEntry(i, j), mapped.getEntry(i, j), 0);
+            }
+        }
+
+        StringBuilder entries = new StringBuilder();
+        mapped.forEachEntry((i, j, x) -> entries.append(i).append(',').append(j).append(' '));
+        assertEquals("1,1 1,4 3,2 5,5 ", entries.toString());
+
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = new double[5], z = new double[5];
+        m.multiply(x, y);
+        mapped.multiply(x, z);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(y[i], z[i], 0);
+        }
+
+        mapped.verify();
+        assertTrue(m.equals(mapped.toMatrix()));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        new Matrix(3).save(path);
+        MappedMatrix mapped = MappedMatrix.map(path);
+        assertEquals(0, mapped.getNNZ());
+        assertEquals(0, mapped.getEntry(2, 2), 0);
+        mapped.verify();
+    }
+
+    @Test(expected = IOException.class)
+    public void verifyCorrupt() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 12] ^= 1;
+        Files.write(path, bytes);
+
+        // Mapping only reads the header, so only verify() notices
+        MappedMatrix mapped = MappedMatrix.map(path);
+        mapped.verify();
+    }
+
+    @Test(expected = IOException.class)
+    public void notAMatrix() throws IOException {
+        Files.write(path, new byte[64]);
+        MappedMatrix.map(path);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() throws IOException {
+        MappedMatrix.map(path).getEntry(6, 1);
+    }
+}
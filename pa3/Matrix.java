@@ -5,16 +5,110 @@
  * Implements a fast, sparse matrix object
  */
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
 public class Matrix {
-    private List rows;
+    // Compressed Sparse Row storage. Row i (1 <= i <= n) owns the entries
+    // in [rowPtr[i-1], rowPtr[i]) of colIdx and values, sorted by column.
+    // colIdx and values may have spare capacity past nnz.
+    //
+    // Only rowPtr[0..lastRow] is kept up to date. Every row past lastRow is
+    // empty, so its pointers are implicitly nnz; use rowStart() and rowEnd()
+    // rather than reading rowPtr directly. This lets changeEntry() append
+    // in row-major order without rewriting the pointers of every later row.
+    private int[] rowPtr;
+    private int[] colIdx;
+    private double[] values;
+    private int nnz;
+    private int lastRow;
+
+    // How many rows hold at least one entry, kept up to date alongside nnz
+    private int nonEmptyRows;
+
+    // copy() shares the arrays above instead of cloning them. owners counts
+    // the matrices sharing them, and whichever changes first takes its own
+    // copy. A copy that is dropped without being changed never gives its
+    // share back, so the other side may still clone once more than needed.
+    private AtomicInteger owners = new AtomicInteger(1);
     private int n;
 
+    // Characters writeTo() collects before handing them to its output
+    private static final int WRITE_BATCH = 8192;
+
+    // Powers of ten tried by appendValue()
+    private static final double[] POW10 = {1, 10, 100, 1000};
+
+    // Binary file format used by save(), load() and MappedMatrix
+    static final int MAGIC = 0x4d525343; // "CSRM" in little endian
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    private static final int IO_CHUNK = 1 << 20;
+    static final long MAP_CHUNK = 1L << 30;
+
+    // Receives the entries of a matrix one at a time from forEachEntry()
+    public interface EntryVisitor {
+        void visit(int row, int column, double value);
+    }
+
     /*
      * Constructs an nxn matrix.
      */
     public Matrix(int n) {
         this.n = n;
-        this.rows = new List();
+        this.rowPtr = new int[n + 1];
+        this.colIdx = new int[0];
+        this.values = new double[0];
+    }
+
+    /*
+     * Wraps already built CSR arrays. Used by the arithmetic operations
+     * and MatrixBuilder, which build their results directly in this form.
+     * rowPtr must have n + 1 entries and every row must be sorted by column
+     * with no zeros.
+     */
+    Matrix(int n, int[] rowPtr, int[] colIdx, double[] values) {
+        this.n = n;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+        this.nnz = rowPtr[n];
+
+        // Trailing empty rows don't need to be tracked
+        this.lastRow = n;
+        while (lastRow > 0 && rowPtr[lastRow - 1] == nnz) {
+            lastRow--;
+        }
+        for (int i = 1; i <= lastRow; i++) {
+            if (rowPtr[i] > rowPtr[i - 1]) {
+                nonEmptyRows++;
+            }
+        }
+    }
+
+    /*
+     * Builds an nxn matrix from (rows[k], cols[k], vals[k]) triplets in any
+     * order. Repeated positions keep the last value, like changeEntry().
+     */
+    public static Matrix fromTriplets(int n, int[] rows, int[] cols, double[] vals) {
+        if (rows.length != cols.length || rows.length != vals.length) {
+            throw new IllegalArgumentException("Matrix: fromTriplets() array lengths differ");
+        }
+        MatrixBuilder builder = new MatrixBuilder(n);
+        for (int k = 0; k < rows.length; k++) {
+            builder.add(rows[k], cols[k], vals[k]);
+        }
+        return builder.build();
     }
 
     /*
@@ -28,31 +122,53 @@ public class Matrix {
      * Returns number of non zero entries in the matrix
      */
     public int getNNZ() {
-        int entries = 0;
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            entries += ((List) rows.get()).length();
+        return nnz;
+    }
+
+    /*
+     * Returns number of non zero entries in row i
+     */
+    public int getRowNNZ(int i) {
+        if (i < 1 || i > getSize()) {
+            throw new IndexOutOfBoundsException("Matrix: getRowNNZ() outside of bounds");
         }
-        return entries;
+        return rowEnd(i) - rowStart(i);
+    }
+
+    /*
+     * Returns number of rows holding at least one non zero entry
+     */
+    public int getNonEmptyRows() {
+        return nonEmptyRows;
     }
 
     /*
      * Get method for (row, col) of Matrix - for unit tests
      */
     public double getEntry(int row, int column) {
-        if (row > getSize() || column > getSize()) {
+        if (row < 1 || column < 1 || row > getSize() || column > getSize()) {
             throw new IndexOutOfBoundsException("Matrix: getEntry() out of bounds");
         }
-        List r = getRow(row);
-        if (r != null) {
-            for (r.moveFront(); r.index() != -1; r.moveNext()) {
-                if (((Entry) r.get()).column == column) {
-                    return ((Entry) r.get()).value;
-                }
-            }
+        int k = find(row, column);
+        if (k >= 0) {
+            return values[k];
         }
         return 0;
     }
 
+    /*
+     * Calls visitor once for every non zero entry, in row major order.
+     * Like every other read this leaves the matrix untouched, so several
+     * threads may read a matrix at once as long as none of them changes it.
+     */
+    public void forEachEntry(EntryVisitor visitor) {
+        for (int i = 1; i <= lastRow; i++) {
+            for (int k = rowPtr[i - 1]; k < rowPtr[i]; k++) {
+                visitor.visit(i, colIdx[k], values[k]);
+            }
+        }
+    }
+
     /*
      * Strict equality
      */
@@ -76,41 +192,25 @@ public class Matrix {
         }
 
         // Matrices with different counts of NNZ are unequal
-        if (this.getNNZ() != M.getNNZ()) {
+        if (this.getNNZ() != M.getNNZ() || this.nonEmptyRows != M.nonEmptyRows) {
             return false;
         }
 
-        // If the row space is different they cannot be equal
-        if (this.rows.length() != M.rows.length()) {
+        // Every row must hold the same number of entries in the same columns
+        for (int i = 1; i <= Math.max(this.lastRow, M.lastRow); i++) {
+            if (this.rowEnd(i) != M.rowEnd(i)) {
+                return false;
+            }
+        }
+        if (!Arrays.equals(this.colIdx, 0, getNNZ(), M.colIdx, 0, getNNZ())) {
             return false;
         }
 
         // Loop through entries
-        for (this.rows.moveFront(), M.rows.moveFront();
-                this.rows.index() != -1 && M.rows.index() != -1;
-                this.rows.moveNext(), M.rows.moveNext()) {
-
-            List thisRow = (List) this.rows.get();
-            List MRow = (List) M.rows.get();
-
-            // Unequal amounts of NNZ, fail
-            if (thisRow.length() != MRow.length()) {
+        for (int k = 0; k < getNNZ(); k++) {
+            if (this.values[k] != M.values[k]) {
                 return false;
             }
-
-            for (thisRow.moveFront(), MRow.moveFront();
-                    thisRow.index() != -1 && MRow.index() != -1;
-                    thisRow.moveNext(), MRow.moveNext()) {
-
-                Entry thisEntry = (Entry) thisRow.get();
-                Entry MEntry = (Entry) MRow.get();
-
-                // If these entries are not equal then fail
-                if (!thisEntry.equals(MEntry)) {
-                    return false;
-                }
-            }
-
         }
 
         // They must be equal
@@ -121,32 +221,41 @@ public class Matrix {
      * Sets all entries in the matrix to 0
      */
     public void makeZero() {
-        rows.clear();
+        // rowPtr[0] is always 0, and with lastRow at 0 the rest is unused.
+        // A shared rowPtr must not be written later, so drop it too.
+        if (owners.get() > 1) {
+            rowPtr = new int[n + 1];
+            owners.decrementAndGet();
+            owners = new AtomicInteger(1);
+        }
+        colIdx = new int[0];
+        values = new double[0];
+        nnz = 0;
+        lastRow = 0;
+        nonEmptyRows = 0;
     }
 
     /*
      * Returns a new matrix with entries identical to this one
      */
     public Matrix copy() {
-        // Initialize empty matrix
-        Matrix newMatrix = new Matrix(getSize());
-
-        // Loop through this's rows
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            // Get current row, create new current row
-            List r = (List) rows.get();
-            List newRow = new List();
-
-            // Fill the newRow with the old row's entries
-            for (r.moveFront(); r.index() != -1; r.moveNext()) {
-                newRow.append(((Entry) r.get()).copy());
-            }
-
-            // Add the new row to the new matrix
-            newMatrix.rows.append(newRow);
-        }
+        // O(1): the copy shares this matrix's arrays until either changes
+        owners.incrementAndGet();
+        return new Matrix(this);
+    }
 
-        return newMatrix;
+    /*
+     * Constructs a matrix sharing the arrays of M. Used by copy().
+     */
+    private Matrix(Matrix M) {
+        this.n = M.n;
+        this.rowPtr = M.rowPtr;
+        this.colIdx = M.colIdx;
+        this.values = M.values;
+        this.nnz = M.nnz;
+        this.lastRow = M.lastRow;
+        this.nonEmptyRows = M.nonEmptyRows;
+        this.owners = M.owners;
     }
 
     /*
@@ -154,44 +263,56 @@ public class Matrix {
      */
     public void changeEntry(int i, int j, double x) {
         // Check i, j is in the matrix first
-        if (i > getSize() || j > getSize()) {
+        if (i < 1 || j < 1 || i > getSize() || j > getSize()) {
             throw new IndexOutOfBoundsException("Matrix: changeEntry() outside of bounds");
         }
 
-        List r = getRow(i);
-        if (r == null && x != 0) {
-            // If the row doesn't exist, create it (as long as the value != 0)
-            r = createRow(i);
-            r.append(new Entry(i, j, x));
-            return;
-        }
-        else if (r != null) {
-            for (r.moveFront(); r.index() != -1; r.moveNext()) {
-                Entry e = (Entry) r.get();
-                if (e.column > j && x != 0) {
-                    r.insertBefore(new Entry(i, j, x));
-                    return;
+        int k = find(i, j);
+        if (k >= 0) {
+            unshare(nnz);
+            if (x != 0) {
+                // Overwrite the existing entry
+                values[k] = x;
+            }
+            else {
+                // Remove the entry, closing the gap it leaves.
+                // Rows past lastRow follow nnz on their own.
+                System.arraycopy(colIdx, k + 1, colIdx, k, nnz - k - 1);
+                System.arraycopy(values, k + 1, values, k, nnz - k - 1);
+                for (int r = i; r <= lastRow; r++) {
+                    rowPtr[r]--;
                 }
-                else if (e.column == j) {
-                    if (x != 0) {
-                        e.value = x;
-                        return;
-                    }
-                    else {
-                        // Remove the element
-                        r.delete();
-                        // Remove list if necessary
-                        if (r.length() == 0) {
-                            deleteRow(r);
-                        }
-                        return;
-                    }
+                nnz--;
+                if (rowPtr[i] == rowPtr[i - 1]) {
+                    nonEmptyRows--;
                 }
             }
-            // Scrubbed through entire row, therefore the entry must go at end
-            if (x != 0) {
-                r.append(new Entry(i, j, x));
+        }
+        else if (x != 0) {
+            // find() encodes where the new entry belongs
+            k = -(k + 1);
+            unshare(nnz + 1);
+
+            // Start tracking every row up to i. When i is past the last
+            // nonempty row the entry lands at the very end, so nothing
+            // below has to move.
+            if (i > lastRow) {
+                Arrays.fill(rowPtr, lastRow + 1, i + 1, nnz);
+                lastRow = i;
+            }
+
+            if (rowPtr[i] == rowPtr[i - 1]) {
+                nonEmptyRows++;
             }
+            ensureCapacity(nnz + 1);
+            System.arraycopy(colIdx, k, colIdx, k + 1, nnz - k);
+            System.arraycopy(values, k, values, k + 1, nnz - k);
+            colIdx[k] = j;
+            values[k] = x;
+            for (int r = i; r <= lastRow; r++) {
+                rowPtr[r]++;
+            }
+            nnz++;
         }
     }
 
@@ -201,7 +322,7 @@ public class Matrix {
     public Matrix scalarMult(double x) {
         // This (ab)uses the addScalar method by creating a zero matrix and
         // adding this matrix times x to it. The cost of creating a zero matrix
-        // is O(1), so no time is lost by this method.
+        // is O(n), so no time is lost by this method.
         return (new Matrix(getSize())).addScalarMultiple(this, x);
     }
 
@@ -212,10 +333,6 @@ public class Matrix {
         if (getSize() != M.getSize()) {
             throw new IndexOutOfBoundsException("Matrix: add() dimensions are inequal");
         }
-        if (M == this) {
-            // To avoid List issues
-            M = M.copy();
-        }
         return addScalarMultiple(M, 1);
     }
 
@@ -226,29 +343,46 @@ public class Matrix {
         if (getSize() != M.getSize()) {
             throw new IndexOutOfBoundsException("Matrix: sub() dimensions are inequal");
         }
-        if (M == this) {
-            // To avoid List issues
-            M = M.copy();
-        }
         return addScalarMultiple(M, -1);
     }
 
+    /*
+     * Returns an unevaluated expression holding this matrix, for chaining
+     * several operations and building the result once with evaluate()
+     */
+    public MatrixExpr lazy() {
+        return new MatrixExpr(this);
+    }
+
     /*
      * Returns this matrix transposed (rotated)
      */
     public Matrix transpose() {
-        Matrix transposed = new Matrix(getSize());
+        // Count the entries in each column; these are the row lengths of
+        // the result, and their running sum is its rowPtr
+        int[] newRowPtr = new int[n + 1];
+        for (int k = 0; k < nnz; k++) {
+            newRowPtr[colIdx[k]]++;
+        }
+        for (int j = 1; j <= n; j++) {
+            newRowPtr[j] += newRowPtr[j - 1];
+        }
 
-        // Naive use of changeEntry, may not be O(n + a)
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            List r = (List) rows.get();
-            for (r.moveFront(); r.index() != -1; r.moveNext()) {
-                Entry e = (Entry) r.get();
-                transposed.changeEntry(e.column, e.row, e.value);
+        // Sweep this row by row, dropping each entry into the next free
+        // slot of its column. Rows are visited in order, so every row of
+        // the result comes out sorted by column with no further work.
+        int[] next = Arrays.copyOf(newRowPtr, n);
+        int[] newColIdx = new int[nnz];
+        double[] newValues = new double[nnz];
+        for (int i = 1; i <= lastRow; i++) {
+            for (int k = rowPtr[i - 1]; k < rowPtr[i]; k++) {
+                int slot = next[colIdx[k] - 1]++;
+                newColIdx[slot] = i;
+                newValues[slot] = values[k];
             }
         }
 
-        return transposed;
+        return new Matrix(getSize(), newRowPtr, newColIdx, newValues);
     }
 
     /*
@@ -258,149 +392,624 @@ public class Matrix {
         if (getSize() != M.getSize()) {
             throw new IndexOutOfBoundsException("Matrix: mult() dimensions are inequal");
         }
-        if (M == this) {
-            // To avoid List issues
-            M = M.copy();
-        }
 
-        Matrix newMatrix = new Matrix(getSize());
+        // A block covering every row is already a whole CSR matrix
+        RowBlock product = multRows(M, 1, n + 1, new Accumulator(n));
+        return new Matrix(getSize(), product.rowPtr, product.colIdx, product.values);
+    }
 
-        // First rotate M so that its columns are now rows
-        M = M.transpose();
+    /*
+     * Returns a matrix that is the product of this and M, computed on the
+     * common ForkJoinPool. The result is identical to mult(M).
+     */
+    public Matrix parallelMult(Matrix M) {
+        return parallelMult(M, ForkJoinPool.commonPool());
+    }
 
-        // Loop through this's rows
-        this.rows.moveFront();
-        for (this.rows.moveFront(); this.rows.index() != -1; this.rows.moveNext()) {
+    /*
+     * Returns a matrix that is the product of this and M, splitting the rows
+     * of the product across pool. The result is identical to mult(M).
+     */
+    public Matrix parallelMult(Matrix M, ForkJoinPool pool) {
+        if (getSize() != M.getSize()) {
+            throw new IndexOutOfBoundsException("Matrix: parallelMult() dimensions are inequal");
+        }
+        if (n == 0) {
+            return new Matrix(0);
+        }
 
-            // Get this row and its index
-            List thisRow = (List) this.rows.get();
-            thisRow.moveFront();
-            int thisRowNumber = ((Entry) thisRow.get()).row;
+        // Weigh each row by the multiply-adds it needs (plus one for the row
+        // itself) and keep running totals, so that cost[to-1] - cost[from-1]
+        // is the work in rows [from, to). Splitting on work rather than on
+        // row count keeps a few very dense rows from stalling one thread.
+        long[] cost = new long[n + 1];
+        for (int i = 1; i <= n; i++) {
+            long flops = 1;
+            for (int a = rowStart(i); a < rowEnd(i); a++) {
+                flops += M.rowEnd(colIdx[a]) - M.rowStart(colIdx[a]);
+            }
+            cost[i] = cost[i - 1] + flops;
+        }
 
-            // Create new row for new matrix
-            List newRow = new List();
+        // Aim for several tasks per thread so that stealing can even out
+        // whatever the estimate gets wrong
+        long grain = Math.max(1, cost[n] / (8L * pool.getParallelism()));
+        RowBlock[] blocks = new RowBlock[n + 1];
+        pool.invoke(new MultTask(this, M, cost, grain, 1, n + 1, blocks,
+                new ConcurrentLinkedQueue<Accumulator>()));
+
+        // Stitch the blocks together in row order
+        int nnz = 0;
+        for (int i = 1; i <= n; i = blocks[i].to) {
+            nnz += blocks[i].nnz();
+        }
+        int[] newRowPtr = new int[n + 1];
+        int[] newColIdx = new int[nnz];
+        double[] newValues = new double[nnz];
+        int offset = 0;
+        for (int i = 1; i <= n; i = blocks[i].to) {
+            RowBlock block = blocks[i];
+            for (int r = block.from; r < block.to; r++) {
+                newRowPtr[r] = offset + block.rowPtr[r - block.from + 1];
+            }
+            System.arraycopy(block.colIdx, 0, newColIdx, offset, block.nnz());
+            System.arraycopy(block.values, 0, newValues, offset, block.nnz());
+            offset += block.nnz();
+        }
 
-            // Loop through M's rows (actually columns)
-            for (M.rows.moveFront(); M.rows.index() != -1; M.rows.moveNext()) {
-                List MRow = (List) M.rows.get();
-                MRow.moveFront();
-                int MRowNumber = ((Entry) MRow.get()).row;
+        return new Matrix(getSize(), newRowPtr, newColIdx, newValues);
+    }
 
-                // Do the dot product and insert it (if it's nonzero)
-                double newVal = dotProduct(thisRow, MRow);
-                if (newVal != 0) {
-                    newRow.append(new Entry(thisRowNumber, MRowNumber, newVal));
-                }
-            }
+    /*
+     * Sets y to this matrix times the vector x. Component j of a vector
+     * (1 <= j <= n) lives at index j - 1, so x and y have length n and
+     * must be different arrays. Allocates nothing.
+     */
+    public void multiply(double[] x, double[] y) {
+        checkVectors(x, y);
+        multiplyRows(x, y, 1, n + 1);
+    }
+
+    /*
+     * Sets y to this matrix times the sparse vector whose components
+     * index[t] (1 <= index[t] <= n) equal value[t] for t < count, and
+     * whose other components are zero. work is scratch space of length n
+     * that must hold only zeros, and is left that way, even when an
+     * index is out of bounds. Allocates nothing, and runs in
+     * O(n + nnz + count), since every component of y is written.
+     */
+    public void multiply(int[] index, double[] value, int count, double[] y, double[] work) {
+        checkVectors(work, y);
+        if (count > index.length || count > value.length) {
+            throw new IndexOutOfBoundsException("Matrix: multiply() count exceeds the vector");
+        }
 
-            // Insert the new row
-            if (newRow.length() > 0) {
-                newMatrix.rows.append(newRow);
+        // Check every index before touching work, so a bad one can't leave
+        // it dirty for the next call
+        for (int t = 0; t < count; t++) {
+            if (index[t] < 1 || index[t] > n) {
+                throw new IndexOutOfBoundsException("Matrix: multiply() index out of bounds");
             }
         }
 
-        return newMatrix;
+        // Scatter x into the dense scratch vector, multiply, then clear only
+        // the components that were set
+        for (int t = 0; t < count; t++) {
+            work[index[t] - 1] = value[t];
+        }
+        multiplyRows(work, y, 1, n + 1);
+        for (int t = 0; t < count; t++) {
+            work[index[t] - 1] = 0;
+        }
+    }
+
+    /*
+     * Same as multiply(x, y), with the rows split across the common
+     * ForkJoinPool. The result is identical to multiply(x, y).
+     */
+    public void parallelMultiply(double[] x, double[] y) {
+        checkVectors(x, y);
+
+        // Split on entries plus rows, so both dense and empty rows count
+        long grain = Math.max(1, ((long) nnz + n) / (8L * ForkJoinPool.getCommonPoolParallelism()));
+        ForkJoinPool.commonPool().invoke(new MultiplyTask(this, x, y, grain, 1, n + 1));
     }
 
     /*
      * Overrides Object's toString
      */
     public String toString() {
-        String matrixString = "";
+        StringBuilder matrixString = new StringBuilder();
+        for (int i = 1; i <= lastRow; i++) {
+            appendRow(matrixString, i);
+        }
+        return matrixString.toString();
+    }
+
+    /*
+     * Writes the same text as toString() to out, passing it along in
+     * batches of rows through one reused buffer instead of building the
+     * whole string first.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(WRITE_BATCH + 64);
+        for (int i = 1; i <= lastRow; i++) {
+            appendRow(buffer, i);
+            if (buffer.length() >= WRITE_BATCH) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        out.append(buffer);
+    }
+
+    /*
+     * Appends row i as "i: (j, value) ...\n", or nothing if it is empty.
+     */
+    private void appendRow(StringBuilder sb, int i) {
+        if (rowStart(i) == rowEnd(i)) {
+            return;
+        }
+        sb.append(i).append(':');
+        for (int k = rowStart(i); k < rowEnd(i); k++) {
+            sb.append(" (").append(colIdx[k]).append(", ");
+            appendValue(sb, values[k]);
+            sb.append(')');
+        }
+        sb.append('\n');
+    }
+
+    /*
+     * Appends x exactly as Double.toString(x) would. Values with at most
+     * three decimal places in the range Double.toString prints without an
+     * exponent are common in our input and are written straight from their
+     * digits; everything else goes through the JDK.
+     */
+    private static void appendValue(StringBuilder sb, double x) {
+        double magnitude = Math.abs(x);
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            for (int k = 0; k < POW10.length; k++) {
+                double scaled = x * POW10[k];
+                long digits = (long) scaled;
+
+                // digits / 10^k must be x itself, with no trailing zero that
+                // Double.toString would have left off
+                if (digits == scaled && digits / POW10[k] == x
+                        && (k == 0 || digits % 10 != 0)) {
+                    long unscaled = Math.abs(digits);
+                    long scale = (long) POW10[k];
+                    if (x < 0) {
+                        sb.append('-');
+                    }
+                    sb.append(unscaled / scale).append('.');
+                    if (k == 0) {
+                        sb.append('0');
+                    }
+                    else {
+                        long fraction = unscaled % scale;
+                        for (long place = scale / 10; place > fraction && place > 1; place /= 10) {
+                            sb.append('0');
+                        }
+                        sb.append(fraction);
+                    }
+                    return;
+                }
+            }
+        }
+        sb.append(x);
+    }
 
-        // Iterate through rows
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            // Determine which row we're looking at (rowNum)
-            List r = (List) rows.get();
-            r.moveFront();
-            int rowNum = ((Entry) r.get()).row;
+    /*
+     * Writes this matrix to out as a Matrix Market "coordinate real general"
+     * file, in batches of rows through one reused buffer.
+     */
+    public void writeMatrixMarket(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(WRITE_BATCH + 64);
+        buffer.append("%%MatrixMarket matrix coordinate real general\n");
+        buffer.append(n).append(' ').append(n).append(' ').append(nnz).append('\n');
+        for (int i = 1; i <= lastRow; i++) {
+            for (int k = rowPtr[i - 1]; k < rowPtr[i]; k++) {
+                buffer.append(i).append(' ').append(colIdx[k]).append(' ');
+                appendValue(buffer, values[k]);
+                buffer.append('\n');
+            }
+            if (buffer.length() >= WRITE_BATCH) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        out.append(buffer);
+    }
 
-            matrixString += rowNum + ":";
+    /*
+     * Reads a Matrix Market coordinate file with a real, integer or pattern
+     * field and general or symmetric symmetry. Pattern entries read as 1,
+     * symmetric files are mirrored across the diagonal, and repeated
+     * entries are summed. The matrix must be square.
+     */
+    public static Matrix readMatrixMarket(Path path) throws IOException {
+        try (TokenReader in = new TokenReader(path)) {
+            // %%MatrixMarket matrix coordinate <field> <symmetry>
+            if (!in.hasNext() || !in.next().equalsIgnoreCase("%%MatrixMarket")) {
+                throw new IOException("Matrix: readMatrixMarket() missing %%MatrixMarket header");
+            }
+            String object = in.next(), format = in.next();
+            String field = in.next().toLowerCase(), symmetry = in.next().toLowerCase();
+            if (!object.equalsIgnoreCase("matrix") || !format.equalsIgnoreCase("coordinate")) {
+                throw new IOException("Matrix: readMatrixMarket() only coordinate matrices are supported");
+            }
+            boolean pattern = field.equals("pattern");
+            if (!pattern && !field.equals("real") && !field.equals("integer")) {
+                throw new IOException("Matrix: readMatrixMarket() unsupported field " + field);
+            }
+            boolean symmetric = symmetry.equals("symmetric");
+            if (!symmetric && !symmetry.equals("general")) {
+                throw new IOException("Matrix: readMatrixMarket() unsupported symmetry " + symmetry);
+            }
+            in.skipLine();
 
-            // Iterate through each element in this row
-            for (r.moveFront(); r.index() != -1; r.moveNext()) {
-                // Add the entry and a space if necessary
-                Entry e = (Entry) r.get();
-                matrixString += " (" + e.column + ", " + e.value + ")";
+            // Comment lines, then "rows columns entries"
+            String rows = in.next();
+            while (rows.startsWith("%")) {
+                in.skipLine();
+                rows = in.next();
+            }
+            int n, columns, entries;
+            try {
+                n = Integer.parseInt(rows);
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("Matrix: readMatrixMarket() bad size line");
+            }
+            columns = in.nextInt();
+            entries = in.nextInt();
+            if (n != columns) {
+                throw new IOException("Matrix: readMatrixMarket() matrix is not square");
             }
 
-            // append new line
-            matrixString += '\n';
+            MatrixBuilder builder = new MatrixBuilder(n, MatrixBuilder.Duplicates.SUM);
+            builder.ensureCapacity(symmetric ? 2 * entries : entries);
+            for (int k = 0; k < entries; k++) {
+                int i = in.nextInt();
+                int j = in.nextInt();
+                double x = pattern ? 1 : in.nextDouble();
+                builder.add(i, j, x);
+                if (symmetric && i != j) {
+                    builder.add(j, i, x);
+                }
+            }
+            return builder.build();
         }
+    }
 
-        return matrixString;
+    /*
+     * Writes this matrix to path in the binary format read by load() and
+     * MappedMatrix.map().
+     * All numbers are little endian:
+     *
+     *   int magic "CSRM", int version, int n, int nnz
+     *   rowPtr as n + 1 ints, padded to a multiple of 8 bytes
+     *   colIdx as nnz ints, padded to a multiple of 8 bytes
+     *   values as nnz doubles
+     *   long CRC32C of everything above
+     */
+    public void save(Path path) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IO_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C checksum = new CRC32C();
+
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(n).putInt(nnz);
+
+            // Rows past lastRow all point at nnz
+            writeInts(out, buffer, checksum, rowPtr, 0, lastRow + 1);
+            for (int i = lastRow + 1; i <= n; i++) {
+                if (buffer.remaining() < 4) {
+                    drain(out, buffer, checksum);
+                }
+                buffer.putInt(nnz);
+            }
+            int[] pad = {0};
+            writeInts(out, buffer, checksum, pad, 0, (n + 1) % 2);
+            writeInts(out, buffer, checksum, colIdx, 0, nnz);
+            writeInts(out, buffer, checksum, pad, 0, nnz % 2);
+            writeDoubles(out, buffer, checksum, values, 0, nnz);
+
+            drain(out, buffer, checksum);
+            buffer.putLong(checksum.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
     }
 
     /*
-     * Get the ith row of the matrix.
-     * If it does not exist, returns null.
+     * Reads a matrix written by save() into memory. The sections are
+     * memory mapped and copied into place in bulk, with no parsing, so
+     * this takes time and heap in proportion to the file; MappedMatrix
+     * reads one lazily instead. Throws IOException if the file is not in
+     * this format, is truncated, or fails its checksum.
      */
-    private List getRow(int i) {
-        // Scrub to the correct position
-        // This while either go to 1. The end of the list, or
-        // 2. A row equal to or past row i
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
+    public static Matrix load(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_BYTES + 8) {
+                throw new IOException("Matrix: load() file is too short");
+            }
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Matrix: load() not a matrix file");
+            }
+            if (header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Matrix: load() unsupported version " + header.getInt(4));
+            }
+            int n = header.getInt(8);
+            int nnz = header.getInt(12);
+            long rowPtrBytes = padded(4L * (n + 1));
+            long colIdxBytes = padded(4L * nnz);
+            if (n < 0 || nnz < 0
+                    || size != HEADER_BYTES + rowPtrBytes + colIdxBytes + 8L * nnz + 8) {
+                throw new IOException("Matrix: load() file size does not match its header");
+            }
+
+            CRC32C checksum = new CRC32C();
+            checksum.update(header);
+            int[] rowPtr = new int[n + 1];
+            int[] colIdx = new int[nnz];
+            double[] values = new double[nnz];
+            long position = HEADER_BYTES;
+            readInts(in, position, rowPtrBytes, checksum, rowPtr);
+            position += rowPtrBytes;
+            readInts(in, position, colIdxBytes, checksum, colIdx);
+            position += colIdxBytes;
+            readDoubles(in, position, checksum, values);
+            position += 8L * nnz;
+
+            ByteBuffer trailer = in.map(FileChannel.MapMode.READ_ONLY, position, 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (trailer.getLong(0) != checksum.getValue()) {
+                throw new IOException("Matrix: load() checksum mismatch");
+            }
 
-            // Check if this row is past or equal
-            // First we scrub to its front, then check the row on element 1
-            List r = (List) rows.get();
-            r.moveFront();
-            if (((Entry) r.get()).row >= i) {
-                break;
+            // A good checksum still can't vouch for a file that was written
+            // wrong, and the rest of Matrix trusts these invariants
+            if (rowPtr[0] != 0 || rowPtr[n] != nnz) {
+                throw new IOException("Matrix: load() row pointers are inconsistent");
             }
+            for (int i = 1; i <= n; i++) {
+                if (rowPtr[i] < rowPtr[i - 1]) {
+                    throw new IOException("Matrix: load() row pointers are inconsistent");
+                }
+                for (int k = rowPtr[i - 1]; k < rowPtr[i]; k++) {
+                    if (colIdx[k] < 1 || colIdx[k] > n
+                            || (k > rowPtr[i - 1] && colIdx[k] <= colIdx[k - 1])
+                            || values[k] == 0) {
+                        throw new IOException("Matrix: load() bad entry in row " + i);
+                    }
+                }
+            }
+
+            return new Matrix(n, rowPtr, colIdx, values);
         }
+    }
 
-        // Determine what we found
-        if (rows.index() == -1 || ((Entry)((List) rows.get()).get()).row > i) {
-            // Off the end or the row wasn't in there
-            return null;
+    /*
+     * Locates (i, j) in the storage arrays.
+     * Returns its position if present, otherwise -(insertion point)-1
+     * in the same manner as Arrays.binarySearch.
+     */
+    private int find(int i, int j) {
+        return Arrays.binarySearch(colIdx, rowStart(i), rowEnd(i), j);
+    }
+
+    /*
+     * Position of the first entry of row i.
+     */
+    private int rowStart(int i) {
+        return i - 1 <= lastRow ? rowPtr[i - 1] : nnz;
+    }
+
+    /*
+     * Position just past the last entry of row i.
+     */
+    private int rowEnd(int i) {
+        return i <= lastRow ? rowPtr[i] : nnz;
+    }
+
+    /*
+     * Gives this matrix its own arrays if copy() left them shared, with
+     * room for at least capacity entries.
+     */
+    private void unshare(int capacity) {
+        if (owners.get() > 1) {
+            rowPtr = rowPtr.clone();
+            colIdx = Arrays.copyOf(colIdx, capacity);
+            values = Arrays.copyOf(values, capacity);
+            owners.decrementAndGet();
+            owners = new AtomicInteger(1);
+        }
+    }
+
+    /*
+     * Grows colIdx and values so they can hold at least capacity entries.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > colIdx.length) {
+            int newCapacity = Math.max(capacity, grow(colIdx.length));
+            colIdx = Arrays.copyOf(colIdx, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
         }
-        else {
-            // rows should be scrubbed exactly to the correct row
-            return (List) rows.get();
+    }
+
+    /*
+     * Next capacity for an array currently holding size elements.
+     */
+    private static int grow(int size) {
+        return Math.max(8, size + (size >> 1));
+    }
+
+    /*
+     * Copies a[from, to) into buffer, draining it to out as it fills.
+     */
+    private static void writeInts(FileChannel out, ByteBuffer buffer, CRC32C checksum,
+            int[] a, int from, int to) throws IOException {
+        while (from < to) {
+            if (buffer.remaining() < 4) {
+                drain(out, buffer, checksum);
+            }
+            int count = Math.min(to - from, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(a, from, count);
+            buffer.position(buffer.position() + 4 * count);
+            from += count;
         }
     }
 
     /*
-     * Creates the new row at row i.
-     * Returns the new row for immediate use.
-     * Assumes that row i does not already exist.
+     * Copies a[from, to) into buffer, draining it to out as it fills.
      */
-    private List createRow(int i) {
-        // Follows a similar pattern to getRow().
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            List r = (List) rows.get();
-            r.moveFront();
-            if (((Entry) r.get()).row >= i) {
-                break;
+    private static void writeDoubles(FileChannel out, ByteBuffer buffer, CRC32C checksum,
+            double[] a, int from, int to) throws IOException {
+        while (from < to) {
+            if (buffer.remaining() < 8) {
+                drain(out, buffer, checksum);
             }
+            int count = Math.min(to - from, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(a, from, count);
+            buffer.position(buffer.position() + 8 * count);
+            from += count;
         }
+    }
 
-        // New list to return
-        List newRow = new List();
+    /*
+     * Writes out everything in buffer, adding it to checksum, and empties it.
+     */
+    private static void drain(FileChannel out, ByteBuffer buffer, CRC32C checksum)
+            throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
 
-        if (rows.index() == -1) {
-            // If we ran off the edge, put it there
-            rows.append(newRow);
+    /*
+     * Fills a from the bytes bytes of in at position (a may need fewer),
+     * mapping at most MAP_CHUNK bytes at a time.
+     */
+    private static void readInts(FileChannel in, long position, long bytes,
+            CRC32C checksum, int[] a) throws IOException {
+        int done = 0;
+        for (long offset = 0; offset < bytes; offset += MAP_CHUNK) {
+            long length = Math.min(MAP_CHUNK, bytes - offset);
+            ByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, position + offset, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            checksum.update(region.duplicate());
+            int count = (int) Math.min(a.length - done, length / 4);
+            region.asIntBuffer().get(a, done, count);
+            done += count;
         }
-        else {
-            // The new list goes right before the current cursor
-            rows.insertBefore(newRow);
+    }
+
+    /*
+     * Fills a from the doubles at position in in, mapping at most
+     * MAP_CHUNK bytes at a time.
+     */
+    private static void readDoubles(FileChannel in, long position,
+            CRC32C checksum, double[] a) throws IOException {
+        long bytes = 8L * a.length;
+        int done = 0;
+        for (long offset = 0; offset < bytes; offset += MAP_CHUNK) {
+            long length = Math.min(MAP_CHUNK, bytes - offset);
+            ByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, position + offset, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            checksum.update(region.duplicate());
+            int count = (int) (length / 8);
+            region.asDoubleBuffer().get(a, done, count);
+            done += count;
         }
+    }
 
-        return newRow;
+    /*
+     * Rounds bytes up to a multiple of 8.
+     */
+    static long padded(long bytes) {
+        return (bytes + 7) & ~7L;
     }
 
     /*
-     * Deletes a row if it exists.
+     * Computes rows [from, to) of this * M with Gustavson's method.
+     * Row i of the product is the sum of this(i, k) * (row k of M).
      */
-    private void deleteRow(List rowToDelete) {
-        // Follows a similar pattern to getRow().
-        for (rows.moveFront(); rows.index() != -1; rows.moveNext()) {
-            if ((List) rows.get() == rowToDelete) {
-                rows.delete();
-                return;
+    private RowBlock multRows(Matrix M, int from, int to, Accumulator acc) {
+        int[] blockRowPtr = new int[to - from + 1];
+        int[] blockColIdx = new int[0];
+        double[] blockValues = new double[0];
+        int nnz = 0;
+
+        for (int i = from; i < to; i++) {
+            int count = 0;
+            for (int a = this.rowStart(i); a < this.rowEnd(i); a++) {
+                int k = this.colIdx[a];
+                double x = this.values[a];
+                for (int b = M.rowStart(k); b < M.rowEnd(k); b++) {
+                    int j = M.colIdx[b];
+                    if (acc.marker[j] != i) {
+                        acc.marker[j] = i;
+                        acc.sums[j] = x * M.values[b];
+                        acc.touched[count++] = j;
+                    }
+                    else {
+                        acc.sums[j] += x * M.values[b];
+                    }
+                }
+            }
+
+            // Gather the row in column order, dropping sums that cancelled
+            Arrays.sort(acc.touched, 0, count);
+            if (nnz + count > blockColIdx.length) {
+                int newCapacity = Math.max(nnz + count, grow(blockColIdx.length));
+                blockColIdx = Arrays.copyOf(blockColIdx, newCapacity);
+                blockValues = Arrays.copyOf(blockValues, newCapacity);
+            }
+            for (int t = 0; t < count; t++) {
+                int j = acc.touched[t];
+                if (acc.sums[j] != 0) {
+                    blockColIdx[nnz] = j;
+                    blockValues[nnz] = acc.sums[j];
+                    nnz++;
+                }
             }
+            blockRowPtr[i - from + 1] = nnz;
+        }
+
+        return new RowBlock(from, to, blockRowPtr, blockColIdx, blockValues);
+    }
+
+    /*
+     * Sets y for rows [from, to) of this times x.
+     */
+    private void multiplyRows(double[] x, double[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double sum = 0;
+            for (int k = rowStart(i); k < rowEnd(i); k++) {
+                sum += values[k] * x[colIdx[k] - 1];
+            }
+            y[i - 1] = sum;
+        }
+    }
+
+    /*
+     * Checks that x and y can be used as the input and output of multiply.
+     */
+    private void checkVectors(double[] x, double[] y) {
+        if (x.length != n || y.length != n) {
+            throw new IndexOutOfBoundsException("Matrix: multiply() dimensions are inequal");
+        }
+        if (x == y) {
+            throw new IllegalArgumentException("Matrix: multiply() input and output are the same array");
         }
     }
 
@@ -409,142 +1018,251 @@ public class Matrix {
      */
     private Matrix addScalarMultiple(Matrix B, double x) {
         // The sizes of this and Matrix B *will* be checked beforehand
-        Matrix C = new Matrix(getSize());
-
-        // Iterate through both matrices' rows
-        this.rows.moveFront();
-        B.rows.moveFront();
-        while (B.rows.index() != -1 || this.rows.index() != -1) {
-
-            // First we'll identify the row number of each matrix,
-            // if it still has a row (otherwise -1)
-            int BNextRow = -1, thisNextRow = -1;
-            List thisRow = null, BRow = null;
-            if (B.rows.index() != -1) {
-                BRow = (List) B.rows.get();
-                BRow.moveFront();
-                BNextRow = ((Entry) BRow.get()).row;
-            }
-            if (this.rows.index() != -1) {
-                thisRow = (List) this.rows.get();
-                thisRow.moveFront();
-                thisNextRow = ((Entry) thisRow.get()).row;
-            }
-
-            // Empty new row to be filled
-            List newRow = new List();
-
-            if (thisRow == null || (BNextRow < thisNextRow && BRow != null)) {
-                // Case 1: Adding a zero row to a row from B
-                for (BRow.moveFront(); BRow.index() != -1; BRow.moveNext()) {
-                    Entry e = ((Entry) BRow.get()).copy();
-                    e.value *= x;
-                    if (e.value != 0) {
-                        newRow.append(e);
-                    }
+        // The result can hold at most the entries of both operands
+        int[] newRowPtr = new int[n + 1];
+        int[] newColIdx = new int[this.getNNZ() + B.getNNZ()];
+        double[] newValues = new double[newColIdx.length];
+        int nnz = 0;
+
+        for (int i = 1; i <= n; i++) {
+            int a = this.rowStart(i), aEnd = this.rowEnd(i);
+            int b = B.rowStart(i), bEnd = B.rowEnd(i);
+
+            // Merge the two rows by column
+            while (a < aEnd || b < bEnd) {
+                double value;
+                int column;
+                if (a == aEnd || (b < bEnd && B.colIdx[b] < this.colIdx[a])) {
+                    // Case 1: Take Entry from B
+                    column = B.colIdx[b];
+                    value = x * B.values[b];
+                    b++;
                 }
-                B.rows.moveNext();
-            }
-            else if (BRow == null || (thisNextRow < BNextRow && thisRow != null)) {
-                // Case 2: Adding a zero row to a row from this
-                for (thisRow.moveFront(); thisRow.index() != -1; thisRow.moveNext()) {
-                    newRow.append(((Entry) thisRow.get()).copy());
+                else if (b == bEnd || this.colIdx[a] < B.colIdx[b]) {
+                    // Case 2: Take Entry from this
+                    column = this.colIdx[a];
+                    value = this.values[a];
+                    a++;
+                }
+                else /* this.colIdx[a] == B.colIdx[b] */ {
+                    // Case 3: The entries must be added
+                    column = this.colIdx[a];
+                    value = this.values[a] + x * B.values[b];
+                    a++;
+                    b++;
                 }
-                this.rows.moveNext();
-            }
-            else /* thisRow == BRow */ {
-                // Case 3: Adding nonzero rows
-                while (thisRow.index() != -1 || BRow.index() != -1) {
-                    // Get entries
-                    Entry BEntry = null, thisEntry = null;
-                    if (BRow.index() != -1) {
-                        // pull from B
-                        BEntry = (Entry) BRow.get();
-                    }
-                    if (thisRow.index() != -1) {
-                        // pull from this
-                        thisEntry = (Entry) thisRow.get();
-                    }
 
-                    if (thisEntry == null || (BEntry != null && BEntry.column < thisEntry.column)) {
-                        // Case 1: Take Entry from B
-                        Entry e = ((Entry) BRow.get()).copy();
-                        e.value *= x;
-                        if (e.value != 0) {
-                            newRow.append(e);
-                        }
-                        BRow.moveNext();
-                    }
-                    else if (BEntry == null || (thisEntry != null && thisEntry.column < BEntry.column)) {
-                        // Case 2: Take Entry from this
-                        newRow.append(((Entry) thisRow.get()).copy());
-                        thisRow.moveNext();
+                if (value != 0) {
+                    newColIdx[nnz] = column;
+                    newValues[nnz] = value;
+                    nnz++;
+                }
+            }
+            newRowPtr[i] = nnz;
+        }
+
+        return new Matrix(getSize(), newRowPtr, newColIdx, newValues);
+    }
+
+    /*
+     * Returns the sum of coefs[t] * terms[t] over every t, merging the rows
+     * of all the terms in one pass. Terms are summed in order, so a chain
+     * of add() and sub() calls gives the same values. Used by MatrixExpr;
+     * every term must be n x n.
+     */
+    static Matrix linearCombination(int n, Matrix[] terms, double[] coefs) {
+        long capacity = 0;
+        for (Matrix term : terms) {
+            capacity += term.nnz;
+        }
+        int[] newRowPtr = new int[n + 1];
+        int[] newColIdx = new int[(int) Math.min(capacity, (long) n * n)];
+        double[] newValues = new double[newColIdx.length];
+        int nnz = 0;
+
+        // pos[t] walks row i of terms[t] up to end[t]
+        int[] pos = new int[terms.length];
+        int[] end = new int[terms.length];
+        for (int i = 1; i <= n; i++) {
+            for (int t = 0; t < terms.length; t++) {
+                pos[t] = terms[t].rowStart(i);
+                end[t] = terms[t].rowEnd(i);
+            }
+
+            while (true) {
+                // The next output column is the smallest one left in any term
+                int column = Integer.MAX_VALUE;
+                for (int t = 0; t < terms.length; t++) {
+                    if (pos[t] < end[t] && terms[t].colIdx[pos[t]] < column) {
+                        column = terms[t].colIdx[pos[t]];
                     }
-                    else /* thisEntry.column == BEntry.column */ {
-                        // Case 3: The entries must be added
-                        Entry e = ((Entry) thisRow.get()).copy();
-                        e.value += x * ((Entry) BRow.get()).value;
-                        if (e.value != 0) {
-                            newRow.append(e);
-                        }
-                        thisRow.moveNext();
-                        BRow.moveNext();
+                }
+                if (column == Integer.MAX_VALUE) {
+                    break;
+                }
+
+                double value = 0;
+                for (int t = 0; t < terms.length; t++) {
+                    if (pos[t] < end[t] && terms[t].colIdx[pos[t]] == column) {
+                        value += coefs[t] * terms[t].values[pos[t]];
+                        pos[t]++;
                     }
                 }
-                B.rows.moveNext();
-                this.rows.moveNext();
-            }
 
-            // Insert the new row
-            if (newRow.length() > 0) {
-                C.rows.append(newRow);
+                if (value != 0) {
+                    newColIdx[nnz] = column;
+                    newValues[nnz] = value;
+                    nnz++;
+                }
             }
+            newRowPtr[i] = nnz;
         }
 
-        return C;
+        return new Matrix(n, newRowPtr, newColIdx, newValues);
+    }
+
+    /*
+     * Sparse accumulator for one row of a product. marker[j] == i means
+     * sums[j] already holds a partial sum for row i, and touched lists
+     * those columns in first-touch order. Rows never repeat within one
+     * product, so an accumulator can be reused for any rows of it.
+     */
+    private static class Accumulator {
+        double[] sums;
+        int[] marker;
+        int[] touched;
+        Accumulator(int n) {
+            this.sums = new double[n + 1];
+            this.marker = new int[n + 1];
+            this.touched = new int[n];
+        }
     }
 
-    private double dotProduct(List A, List B) {
-        double product = 0;
+    /*
+     * Rows [from, to) of a product in CSR form, with rowPtr relative to
+     * the first row of the block.
+     */
+    private static class RowBlock {
+        int from, to;
+        int[] rowPtr;
+        int[] colIdx;
+        double[] values;
+        RowBlock(int from, int to, int[] rowPtr, int[] colIdx, double[] values) {
+            this.from = from;
+            this.to = to;
+            this.rowPtr = rowPtr;
+            this.colIdx = colIdx;
+            this.values = values;
+        }
 
-        A.moveFront();
-        B.moveFront();
-        while (A.index() != -1 && B.index() != -1) {
-            Entry Ae = (Entry) A.get();
-            Entry Be = (Entry) B.get();
-            if (Ae.column == Be.column) {
-                product += Ae.value * Be.value;
-                A.moveNext();
-                B.moveNext();
-            }
-            else if (Ae.column < Be.column) {
-                A.moveNext();
+        int nnz() {
+            return rowPtr[to - from];
+        }
+    }
+
+    /*
+     * Computes rows [from, to) of A * B into blocks[from], halving the
+     * range by estimated work until it is small enough to run directly.
+     * Accumulators are handed between leaves through spare, so there are
+     * never more of them than threads working at once.
+     */
+    private static class MultTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        Matrix A, B;
+        long[] cost;
+        long grain;
+        int from, to;
+        RowBlock[] blocks;
+        ConcurrentLinkedQueue<Accumulator> spare;
+
+        MultTask(Matrix A, Matrix B, long[] cost, long grain, int from, int to,
+                RowBlock[] blocks, ConcurrentLinkedQueue<Accumulator> spare) {
+            this.A = A;
+            this.B = B;
+            this.cost = cost;
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
+            this.blocks = blocks;
+            this.spare = spare;
+        }
+
+        protected void compute() {
+            if (to - from == 1 || cost[to - 1] - cost[from - 1] <= grain) {
+                Accumulator acc = spare.poll();
+                if (acc == null) {
+                    acc = new Accumulator(A.getSize());
+                }
+                blocks[from] = A.multRows(B, from, to, acc);
+                spare.offer(acc);
+                return;
             }
-            else /* Be.column < Ae.column */ {
-                B.moveNext();
+
+            // Split at the first row where half of the work is done,
+            // leaving at least one row on each side
+            long half = cost[from - 1] + (cost[to - 1] - cost[from - 1]) / 2;
+            int lo = from + 1, hi = to - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cost[mid - 1] >= half) {
+                    hi = mid;
+                }
+                else {
+                    lo = mid + 1;
+                }
             }
+            invokeAll(new MultTask(A, B, cost, grain, from, lo, blocks, spare),
+                    new MultTask(A, B, cost, grain, lo, to, blocks, spare));
         }
-
-        return product;
     }
 
-    private class Entry {
-        int row, column;
-        double value;
-        Entry(int row, int column, double value) {
-            this.row = row;
-            this.column = column;
-            this.value = value;
+    /*
+     * Computes rows [from, to) of A times x into y, halving the range by
+     * entries plus rows until it is small enough to run directly.
+     */
+    private static class MultiplyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        Matrix A;
+        double[] x, y;
+        long grain;
+        int from, to;
+
+        MultiplyTask(Matrix A, double[] x, double[] y, long grain, int from, int to) {
+            this.A = A;
+            this.x = x;
+            this.y = y;
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
         }
 
-        Entry copy() {
-            return new Entry(this.row, this.column, this.value);
+        protected void compute() {
+            if (to - from == 1 || weight(from, to) <= grain) {
+                A.multiplyRows(x, y, from, to);
+                return;
+            }
+
+            // Split at the first row where half of the weight is done,
+            // leaving at least one row on each side
+            long half = weight(from, to) / 2;
+            int lo = from + 1, hi = to - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (weight(from, mid) >= half) {
+                    hi = mid;
+                }
+                else {
+                    lo = mid + 1;
+                }
+            }
+            invokeAll(new MultiplyTask(A, x, y, grain, from, lo),
+                    new MultiplyTask(A, x, y, grain, lo, to));
         }
 
-        boolean equals(Entry e) {
-            return this.row == e.row
-                && this.column == e.column
-                && this.value == e.value;
+        long weight(int from, int to) {
+            return (long) A.rowStart(to) - A.rowStart(from) + (to - from);
         }
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * MatrixBuilder.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Collects unsorted (row, column, value) triplets and builds a Matrix once.
+ */
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class MatrixBuilder {
+    // How to combine triplets that land on the same (row, column)
+    public enum Duplicates {
+        FIRST,  // keep the value added first
+        LAST,   // keep the value added last, like repeated changeEntry()
+        SUM     // add the values together
+    }
+
+    // Rows at least this long are sorted with Arrays.parallelSort
+    private static final int PARALLEL_ROW = 1 << 16;
+
+    private int[] rows;
+    private int[] cols;
+    private double[] vals;
+    private int count = 0;
+    private int n;
+    private Duplicates policy;
+
+    /*
+     * Starts an empty builder for an nxn matrix that keeps the last value
+     * given for any position.
+     */
+    public MatrixBuilder(int n) {
+        this(n, Duplicates.LAST);
+    }
+
+    /*
+     * Starts an empty builder for an nxn matrix that combines repeated
+     * positions according to policy.
+     */
+    public MatrixBuilder(int n, Duplicates policy) {
+        this.n = n;
+        this.policy = policy;
+        this.rows = new int[0];
+        this.cols = new int[0];
+        this.vals = new double[0];
+    }
+
+    /*
+     * Returns how many triplets have been added
+     */
+    public int size() {
+        return count;
+    }
+
+    /*
+     * Makes room for at least capacity triplets in total, for callers that
+     * know how many are coming
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > rows.length) {
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            vals = Arrays.copyOf(vals, capacity);
+        }
+    }
+
+    /*
+     * Records that (row, column) should hold value. Zeros are kept until
+     * build() so they can still override or cancel other triplets.
+     */
+    public void add(int row, int column, double value) {
+        if (row < 1 || column < 1 || row > n || column > n) {
+            throw new IndexOutOfBoundsException("MatrixBuilder: add() out of bounds");
+        }
+        if (count == rows.length) {
+            ensureCapacity(Math.max(8, count + (count >> 1)));
+        }
+        rows[count] = row;
+        cols[count] = column;
+        vals[count] = value;
+        count++;
+    }
+
+    /*
+     * Returns the matrix holding every triplet added so far
+     */
+    public Matrix build() {
+        return build(false);
+    }
+
+    /*
+     * Returns the matrix holding every triplet added so far, sorting the
+     * rows on the common ForkJoinPool when parallel is true.
+     * The builder is left untouched and can keep collecting.
+     */
+    public Matrix build(boolean parallel) {
+        // Bucket the triplets by row with a counting sort, so that start[i]
+        // is where row i begins in keys
+        int[] start = new int[n + 1];
+        for (int k = 0; k < count; k++) {
+            start[rows[k]]++;
+        }
+        int total = 0;
+        for (int i = 0; i <= n; i++) {
+            int rowCount = start[i];
+            start[i] = total;
+            total += rowCount;
+        }
+
+        // Within a row, order by column and then by insertion order. Both
+        // fit in one long, so a plain primitive sort is stable for free.
+        long[] keys = new long[count];
+        int[] next = start.clone();
+        for (int k = 0; k < count; k++) {
+            keys[next[rows[k]]++] = ((long) cols[k] << 32) | k;
+        }
+        if (parallel) {
+            IntStream.rangeClosed(1, n).parallel().forEach(i -> sortRow(keys, start, i, true));
+        }
+        else {
+            for (int i = 1; i <= n; i++) {
+                sortRow(keys, start, i, false);
+            }
+        }
+
+        // Collapse each run of equal columns into one entry
+        int[] rowPtr = new int[n + 1];
+        int[] colIdx = new int[count];
+        double[] values = new double[count];
+        int nnz = 0;
+        for (int i = 1; i <= n; i++) {
+            int end = i < n ? start[i + 1] : count;
+            int k = start[i];
+            while (k < end) {
+                int column = (int) (keys[k] >>> 32);
+                double value = vals[(int) keys[k]];
+                k++;
+                while (k < end && (int) (keys[k] >>> 32) == column) {
+                    double repeat = vals[(int) keys[k]];
+                    if (policy == Duplicates.LAST) {
+                        value = repeat;
+                    }
+                    else if (policy == Duplicates.SUM) {
+                        value += repeat;
+                    }
+                    k++;
+                }
+                if (value != 0) {
+                    colIdx[nnz] = column;
+                    values[nnz] = value;
+                    nnz++;
+                }
+            }
+            rowPtr[i] = nnz;
+        }
+
+        return new Matrix(n, rowPtr, colIdx, values);
+    }
+
+    /*
+     * Sorts the keys belonging to row i.
+     */
+    private void sortRow(long[] keys, int[] start, int i, boolean parallel) {
+        int from = start[i];
+        int to = i < n ? start[i + 1] : count;
+        if (parallel && to - from >= PARALLEL_ROW) {
+            Arrays.parallelSort(keys, from, to);
+        }
+        else {
+            Arrays.sort(keys, from, to);
+        }
+    }
+}
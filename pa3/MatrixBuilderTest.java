@@ -0,0 +1,97 @@
+/*
+ * MatrixBuilderTest.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Unit tests for MatrixBuilder.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+
+public class MatrixBuilderTest {
+    MatrixBuilder b;
+
+    @Before
+    public void setup() {
+        this.b = new MatrixBuilder(3);
+    }
+
+    @Test
+    public void emptyBuild() {
+        assertEquals(0, b.size());
+        assertEquals(0, b.build().getNNZ());
+        assertEquals(3, b.build().getSize());
+    }
+
+    @Test
+    public void unsortedBuild() {
+        b.add(3, 2, 3);
+        b.add(1, 3, 1);
+        b.add(1, 1, 2);
+        assertEquals(3, b.size());
+        assertEquals("1: (1, 2.0) (3, 1.0)\n3: (2, 3.0)\n", b.build().toString());
+    }
+
+    @Test
+    public void matchesChangeEntry() {
+        Matrix m = new Matrix(3);
+        m.changeEntry(2, 2, 4);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(2, 2, 0);
+        m.changeEntry(3, 1, 5);
+        m.changeEntry(1, 3, 7);
+
+        b.add(2, 2, 4);
+        b.add(1, 3, 1);
+        b.add(2, 2, 0);
+        b.add(3, 1, 5);
+        b.add(1, 3, 7);
+
+        assertTrue(m.equals(b.build()));
+    }
+
+    @Test
+    public void duplicatesFirst() {
+        b = new MatrixBuilder(3, MatrixBuilder.Duplicates.FIRST);
+        b.add(2, 2, 1);
+        b.add(2, 2, 2);
+        b.add(2, 2, 3);
+        assertEquals("2: (2, 1.0)\n", b.build().toString());
+    }
+
+    @Test
+    public void duplicatesSum() {
+        b = new MatrixBuilder(3, MatrixBuilder.Duplicates.SUM);
+        b.add(2, 2, 1);
+        b.add(1, 1, 2);
+        b.add(2, 2, 3);
+        b.add(1, 1, -2);
+        assertEquals(1, b.build().getNNZ());
+        assertEquals("2: (2, 4.0)\n", b.build().toString());
+    }
+
+    @Test
+    public void parallelBuild() {
+        b = new MatrixBuilder(100);
+        for (int k = 0; k < 5000; k++) {
+            b.add(1 + (k * 37) % 100, 1 + (k * 53) % 100, k);
+        }
+        assertTrue(b.build(false).equals(b.build(true)));
+    }
+
+    @Test
+    public void fromTriplets() {
+        int rows[] = {3, 1, 1};
+        int cols[] = {2, 3, 1};
+        double vals[] = {3, 1, 2};
+        Matrix m = Matrix.fromTriplets(3, rows, cols, vals);
+        assertEquals("1: (1, 2.0) (3, 1.0)\n3: (2, 3.0)\n", m.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        b.add(4, 1, 1);
+    }
+}
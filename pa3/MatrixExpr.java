@@ -0,0 +1,175 @@
+/*
+ * MatrixExpr.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * A Matrix expression that is only computed when evaluate() is called.
+ */
+
+import java.util.ArrayList;
+
+public class MatrixExpr {
+    // What kind of node this is
+    private enum Op {
+        LEAF,       // matrix
+        SCALE,      // scale * left
+        SUM,        // left + right
+        TRANSPOSE,  // left transposed
+        PRODUCT     // left * right
+    }
+
+    private Op op;
+    private Matrix matrix;
+    private MatrixExpr left, right;
+    private double scale;
+    private int n;
+
+    /*
+     * Constructs an expression that evaluates to a copy of M.
+     * M is read when evaluate() runs, not before.
+     */
+    public MatrixExpr(Matrix M) {
+        this.op = Op.LEAF;
+        this.matrix = M;
+        this.n = M.getSize();
+    }
+
+    private MatrixExpr(Op op, MatrixExpr left, MatrixExpr right, double scale) {
+        this.op = op;
+        this.left = left;
+        this.right = right;
+        this.scale = scale;
+        this.n = left.n;
+    }
+
+    /*
+     * Returns dimension of the result (n)
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /*
+     * Returns this expression times x
+     */
+    public MatrixExpr times(double x) {
+        return new MatrixExpr(Op.SCALE, this, null, x);
+    }
+
+    /*
+     * Returns this expression plus M
+     */
+    public MatrixExpr plus(Matrix M) {
+        return plus(new MatrixExpr(M));
+    }
+
+    /*
+     * Returns this expression plus E
+     */
+    public MatrixExpr plus(MatrixExpr E) {
+        if (getSize() != E.getSize()) {
+            throw new IndexOutOfBoundsException("MatrixExpr: plus() dimensions are inequal");
+        }
+        return new MatrixExpr(Op.SUM, this, E, 0);
+    }
+
+    /*
+     * Returns this expression minus M
+     */
+    public MatrixExpr minus(Matrix M) {
+        return minus(new MatrixExpr(M));
+    }
+
+    /*
+     * Returns this expression minus E
+     */
+    public MatrixExpr minus(MatrixExpr E) {
+        if (getSize() != E.getSize()) {
+            throw new IndexOutOfBoundsException("MatrixExpr: minus() dimensions are inequal");
+        }
+        return new MatrixExpr(Op.SUM, this, E.times(-1), 0);
+    }
+
+    /*
+     * Returns this expression transposed
+     */
+    public MatrixExpr transpose() {
+        return new MatrixExpr(Op.TRANSPOSE, this, null, 0);
+    }
+
+    /*
+     * Returns this expression times the matrix M
+     */
+    public MatrixExpr mult(Matrix M) {
+        return mult(new MatrixExpr(M));
+    }
+
+    /*
+     * Returns this expression times the matrix E
+     */
+    public MatrixExpr mult(MatrixExpr E) {
+        if (getSize() != E.getSize()) {
+            throw new IndexOutOfBoundsException("MatrixExpr: mult() dimensions are inequal");
+        }
+        return new MatrixExpr(Op.PRODUCT, this, E, 0);
+    }
+
+    /*
+     * Computes the expression as a new Matrix.
+     * Sums, differences and scalar multiples are flattened into a list of
+     * terms with one coefficient each and merged row by row in a single
+     * pass, so no intermediate matrix is built for them. Transposes and
+     * products still build their operands first.
+     *
+     * Scalars are pushed down onto the terms and the terms are added left
+     * to right, so (A + B).times(x) is computed as x*A + x*B and
+     * A.minus(B.minus(C)) as A - B + C. A left to right chain such as
+     * A.times(x).plus(B).minus(C) matches calling scalarMult(), add() and
+     * sub() one at a time exactly; regrouped sums and scalars that aren't
+     * powers of two may differ from it in the last bit.
+     */
+    public Matrix evaluate() {
+        ArrayList<Matrix> terms = new ArrayList<Matrix>();
+        ArrayList<Double> coefs = new ArrayList<Double>();
+        collect(1, terms, coefs);
+
+        double[] coefArray = new double[coefs.size()];
+        for (int t = 0; t < coefArray.length; t++) {
+            coefArray[t] = coefs.get(t);
+        }
+        return Matrix.linearCombination(n, terms.toArray(new Matrix[0]), coefArray);
+    }
+
+    /*
+     * Appends this expression times coef to terms and coefs, from left to
+     * right, evaluating any transposes and products along the way.
+     */
+    private void collect(double coef, ArrayList<Matrix> terms, ArrayList<Double> coefs) {
+        switch (op) {
+            case SCALE:
+                left.collect(coef * scale, terms, coefs);
+                return;
+            case SUM:
+                left.collect(coef, terms, coefs);
+                right.collect(coef, terms, coefs);
+                return;
+            case TRANSPOSE:
+                terms.add(left.materialize().transpose());
+                break;
+            case PRODUCT:
+                terms.add(left.materialize().mult(right.materialize()));
+                break;
+            default:
+                terms.add(matrix);
+                break;
+        }
+        coefs.add(coef);
+    }
+
+    /*
+     * Returns a Matrix equal to this expression, sharing the leaf itself
+     * rather than copying it.
+     */
+    private Matrix materialize() {
+        return op == Op.LEAF ? matrix : evaluate();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * MatrixExprTest.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Unit tests for MatrixExpr.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.Before;
+
+public class MatrixExprTest {
+    Matrix A, B, C;
+
+    @Before
+    public void setup() {
+        A = new Matrix(3);
+        A.changeEntry(1, 1, 1);
+        A.changeEntry(1, 3, 2.5);
+        A.changeEntry(2, 2, -3);
+        A.changeEntry(3, 1, 0.1);
+
+        B = new Matrix(3);
+        B.changeEntry(1, 1, -1);
+        B.changeEntry(2, 3, 4);
+        B.changeEntry(3, 1, 0.2);
+        B.changeEntry(3, 3, 7);
+
+        C = new Matrix(3);
+        C.changeEntry(1, 2, 5);
+        C.changeEntry(3, 3, 7);
+    }
+
+    @Test
+    public void leafIsCopy() {
+        Matrix M = A.lazy().evaluate();
+        assertTrue(A.equals(M));
+        M.changeEntry(1, 1, 9);
+        assertEquals(1, A.getEntry(1, 1), 0);
+    }
+
+    @Test
+    public void matchesEagerChain() {
+        Matrix eager = A.scalarMult(1.5).add(B).sub(C).add(A);
+        Matrix lazy = A.lazy().times(1.5).plus(B).minus(C).plus(A).evaluate();
+        assertTrue(eager.equals(lazy));
+        assertEquals(eager.getNNZ(), lazy.getNNZ());
+    }
+
+    @Test
+    public void dropsCancelledEntries() {
+        Matrix M = A.lazy().minus(A).plus(B).minus(B).evaluate();
+        assertEquals(0, M.getNNZ());
+        assertEquals("", M.toString());
+    }
+
+    @Test
+    public void scalarsDistribute() {
+        Matrix M = A.lazy().plus(B).times(2).evaluate();
+        assertTrue(A.add(B).scalarMult(2).equals(M));
+    }
+
+    @Test
+    public void transposeAndMult() {
+        Matrix M = A.lazy().transpose().plus(B.lazy().mult(C)).evaluate();
+        assertTrue(A.transpose().add(B.mult(C)).equals(M));
+    }
+
+    @Test
+    public void readsAtEvaluate() {
+        MatrixExpr E = A.lazy().plus(B);
+        A.changeEntry(2, 2, 0);
+        assertEquals(0, E.evaluate().getEntry(2, 2), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void plusDimensions() {
+        A.lazy().plus(new Matrix(4));
+    }
+}
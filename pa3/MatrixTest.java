@@ -8,8 +8,13 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.junit.Before;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 public class MatrixTest {
     Matrix m;
@@ -111,6 +116,108 @@ public class MatrixTest {
         assertEquals("", m.toString());
     }
 
+    @Test
+    public void writeTo() throws IOException {
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(3, 2, 3);
+        StringBuilder out = new StringBuilder();
+        m.writeTo(out);
+        assertEquals(m.toString(), out.toString());
+    }
+
+    @Test
+    public void makeStringValues() {
+        // Must match Double.toString, including its exponent forms
+        m.changeEntry(1, 1, -0.75);
+        m.changeEntry(1, 2, 0.001);
+        m.changeEntry(1, 3, 0.0001);
+        m.changeEntry(2, 1, 1e7);
+        m.changeEntry(2, 2, 9999999.5);
+        m.changeEntry(2, 3, 0.1 + 0.2);
+        m.changeEntry(3, 1, -12.05);
+        assertEquals("1: (1, -0.75) (2, 0.001) (3, 1.0E-4)\n"
+                + "2: (1, 1.0E7) (2, 9999999.5) (3, 0.30000000000000004)\n"
+                + "3: (1, -12.05)\n", m.toString());
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        m = new Matrix(6);
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 3, -1.5);
+        m.changeEntry(3, 2, 3e-9);
+        Path path = Files.createTempFile("MatrixTest", ".csr");
+        path.toFile().deleteOnExit();
+
+        m.save(path);
+        Matrix n = Matrix.load(path);
+        assertTrue(m.equals(n));
+        assertEquals(3, n.getNNZ());
+
+        new Matrix(4).save(path);
+        assertTrue(new Matrix(4).equals(Matrix.load(path)));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadCorrupt() throws IOException {
+        m.changeEntry(1, 1, 2);
+        Path path = Files.createTempFile("MatrixTest", ".csr");
+        path.toFile().deleteOnExit();
+        m.save(path);
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 12] ^= 1;
+        Files.write(path, bytes);
+        Matrix.load(path);
+    }
+
+    @Test
+    public void readMatrixMarket() throws IOException {
+        Path path = Files.createTempFile("MatrixTest", ".mtx");
+        path.toFile().deleteOnExit();
+        Files.write(path, ("%%MatrixMarket matrix coordinate real symmetric\n"
+                + "% a comment\n"
+                + "%\n"
+                + "3 3 3\n"
+                + "1 1 2\n"
+                + "3 1 1.5\n"
+                + "3 2 -1e-1\n").getBytes("US-ASCII"));
+        assertEquals("1: (1, 2.0) (3, 1.5)\n2: (3, -0.1)\n3: (1, 1.5) (2, -0.1)\n",
+                Matrix.readMatrixMarket(path).toString());
+
+        Files.write(path, ("%%MatrixMarket matrix coordinate pattern general\n"
+                + "3 3 2\n"
+                + "2 3\n"
+                + "1 2\n").getBytes("US-ASCII"));
+        assertEquals("1: (2, 1.0)\n2: (3, 1.0)\n", Matrix.readMatrixMarket(path).toString());
+    }
+
+    @Test
+    public void writeMatrixMarket() throws IOException {
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(3, 2, 3.25);
+        StringBuilder out = new StringBuilder();
+        m.writeMatrixMarket(out);
+        assertEquals("%%MatrixMarket matrix coordinate real general\n3 3 3\n"
+                + "1 1 2.0\n1 3 1.0\n3 2 3.25\n", out.toString());
+
+        Path path = Files.createTempFile("MatrixTest", ".mtx");
+        path.toFile().deleteOnExit();
+        Files.write(path, out.toString().getBytes("US-ASCII"));
+        assertTrue(m.equals(Matrix.readMatrixMarket(path)));
+    }
+
+    @Test(expected = IOException.class)
+    public void readMatrixMarketArray() throws IOException {
+        Path path = Files.createTempFile("MatrixTest", ".mtx");
+        path.toFile().deleteOnExit();
+        Files.write(path, "%%MatrixMarket matrix array real general\n2 2\n1\n2\n3\n4\n"
+                .getBytes("US-ASCII"));
+        Matrix.readMatrixMarket(path);
+    }
+
     @Test
     public void makeZero() {
         m.changeEntry(1, 1, 2);
@@ -129,6 +236,26 @@ public class MatrixTest {
         assertEquals(0, m.getEntry(1, 1), 0);
     }
 
+    @Test
+    public void copyIsIndependent() {
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(3, 2, 3);
+        Matrix n = m.copy();
+        Matrix o = n.copy();
+
+        n.changeEntry(1, 1, 5);
+        n.changeEntry(2, 2, 1);
+        m.changeEntry(3, 2, 0);
+        o.makeZero();
+        o.changeEntry(2, 3, 4);
+
+        assertEquals("1: (1, 2.0)\n", m.toString());
+        assertEquals("1: (1, 5.0)\n2: (2, 1.0)\n3: (2, 3.0)\n", n.toString());
+        assertEquals("2: (3, 4.0)\n", o.toString());
+        assertEquals(3, n.getNNZ());
+        assertEquals(1, m.getNonEmptyRows());
+    }
+
     @Test
     public void nonEmptyCopy() {
         m.changeEntry(1, 1, 2);
@@ -213,6 +340,21 @@ public class MatrixTest {
         assertEquals("1: (1, 2.0)\n2: (3, 3.0)\n3: (1, 1.0)\n", n.toString());
     }
 
+    @Test
+    public void transposeTwice() {
+        m = new Matrix(5);
+        m.changeEntry(5, 1, 1);
+        m.changeEntry(2, 4, 2);
+        m.changeEntry(2, 1, 3);
+        m.changeEntry(4, 4, 4);
+
+        Matrix n = m.transpose();
+
+        assertEquals("1: (2, 3.0) (5, 1.0)\n4: (2, 2.0) (4, 4.0)\n", n.toString());
+        assertTrue(m.equals(n.transpose()));
+        assertEquals(0, new Matrix(5).transpose().getNNZ());
+    }
+
     @Test
     public void multiply() {
         /*
@@ -236,6 +378,197 @@ public class MatrixTest {
         assertEquals("1: (1, 13.0) (3, 9.0)\n3: (2, 24.0) (3, 3.0)\n", o.toString());
     }
 
+    @Test
+    public void multiplyDropsCancelledEntries() {
+        /*
+         *  1 1 0   1 0 0   0 0 0
+         *  0 0 0 x -1 0 0 = 0 0 0
+         *  0 0 2   0 0 3   0 0 6
+         */
+        m.changeEntry(1, 1, 1);
+        m.changeEntry(1, 2, 1);
+        m.changeEntry(3, 3, 2);
+
+        Matrix n = new Matrix(m.getSize());
+        n.changeEntry(1, 1, 1);
+        n.changeEntry(2, 1, -1);
+        n.changeEntry(3, 3, 3);
+
+        Matrix o = m.mult(n);
+
+        assertEquals(1, o.getNNZ());
+        assertEquals("3: (3, 6.0)\n", o.toString());
+    }
+
+    @Test
+    public void parallelMultiply() {
+        // One dense row among sparse ones, so the split is uneven
+        m = new Matrix(200);
+        Matrix n = new Matrix(200);
+        for (int j = 1; j <= 200; j++) {
+            m.changeEntry(7, j, j % 5 - 2);
+            n.changeEntry(j, (j * 31) % 200 + 1, 0.5 * j);
+        }
+        for (int i = 1; i <= 200; i += 3) {
+            m.changeEntry(i, (i * 17) % 200 + 1, 1.25);
+            n.changeEntry(i, i, -3);
+        }
+
+        Matrix o = m.mult(n);
+        assertTrue(o.equals(m.parallelMult(n, new ForkJoinPool(4))));
+        assertTrue(o.equals(m.parallelMult(n)));
+        assertTrue(n.mult(n).equals(n.parallelMult(n)));
+    }
+
+    @Test
+    public void parallelMultiplyEmpty() {
+        Matrix e = new Matrix(0);
+        assertTrue(e.mult(e).equals(e.parallelMult(e)));
+        assertEquals(0, e.parallelMult(e).getSize());
+    }
+
+    @Test
+    public void multiplyVector() {
+        /*
+         *  2 0 1   1   5
+         *  0 0 0 x 2 = 0
+         *  0 3 0   3   6
+         */
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(3, 2, 3);
+
+        double x[] = {1, 2, 3};
+        double y[] = {-1, -1, -1};
+        m.multiply(x, y);
+        assertEquals(5, y[0], 0);
+        assertEquals(0, y[1], 0);
+        assertEquals(6, y[2], 0);
+
+        double z[] = new double[3];
+        m.parallelMultiply(x, z);
+        assertEquals(5, z[0], 0);
+        assertEquals(0, z[1], 0);
+        assertEquals(6, z[2], 0);
+    }
+
+    @Test
+    public void multiplySparseVector() {
+        m.changeEntry(1, 1, 2);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(3, 2, 3);
+
+        // The vector (0, 2, 3), given by its nonzero components
+        int index[] = {3, 2};
+        double value[] = {3, 2};
+        double y[] = new double[3];
+        double work[] = new double[3];
+        m.multiply(index, value, 2, y, work);
+        assertEquals(3, y[0], 0);
+        assertEquals(0, y[1], 0);
+        assertEquals(6, y[2], 0);
+        assertEquals(0, work[1], 0);
+        assertEquals(0, work[2], 0);
+    }
+
+    @Test
+    public void multiplySparseVectorBadIndex() {
+        // work must stay clean for the next call even when this one fails
+        int index[] = {1, 2, 9};
+        double value[] = {5, 6, 7};
+        double work[] = new double[3];
+        try {
+            m.multiply(index, value, 3, new double[3], work);
+            fail();
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+        assertEquals(0, work[0], 0);
+        assertEquals(0, work[1], 0);
+        assertEquals(0, work[2], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void multiplyVectorWrongLength() {
+        m.multiply(new double[2], new double[3]);
+    }
+
+    @Test
+    public void changeEntryShiftsLaterRows() {
+        m.changeEntry(3, 2, 3);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(2, 2, 5);
+        m.changeEntry(1, 1, 2);
+        assertEquals("1: (1, 2.0) (3, 1.0)\n2: (2, 5.0)\n3: (2, 3.0)\n", m.toString());
+
+        m.changeEntry(2, 2, 0);
+        m.changeEntry(1, 1, 0);
+        assertEquals(2, m.getNNZ());
+        assertEquals("1: (3, 1.0)\n3: (2, 3.0)\n", m.toString());
+    }
+
+    @Test
+    public void changeEntryRowMajorLoad() {
+        m = new Matrix(1000);
+        for (int i = 1; i <= 1000; i += 3) {
+            m.changeEntry(i, 1, i);
+            m.changeEntry(i, i, 1);
+        }
+        assertEquals(667, m.getNNZ());
+        assertEquals(997, m.getEntry(997, 1), 0);
+        assertEquals(0, m.getEntry(998, 1), 0);
+        assertEquals(0, m.getEntry(999, 999), 0);
+
+        // Reaching back into an earlier row after loading later ones
+        m.changeEntry(2, 2, 5);
+        assertEquals(5, m.getEntry(2, 2), 0);
+        assertEquals(997, m.getEntry(997, 1), 0);
+        assertTrue(m.equals(m.copy()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void changeEntryRowZero() {
+        m.changeEntry(0, 1, 1);
+    }
+
+    @Test
+    public void forEachEntry() {
+        m.changeEntry(3, 2, 3);
+        m.changeEntry(1, 3, 1);
+        m.changeEntry(1, 1, 2);
+        StringBuilder seen = new StringBuilder();
+        m.forEachEntry((row, column, value) ->
+                seen.append(row).append(',').append(column).append('=').append(value).append(' '));
+        assertEquals("1,1=2.0 1,3=1.0 3,2=3.0 ", seen.toString());
+    }
+
+    @Test
+    public void rowCounts() {
+        m = new Matrix(5);
+        m.changeEntry(4, 1, 1);
+        m.changeEntry(2, 3, 1);
+        m.changeEntry(2, 1, 1);
+        assertEquals(2, m.getNonEmptyRows());
+        assertEquals(2, m.getRowNNZ(2));
+        assertEquals(1, m.getRowNNZ(4));
+        assertEquals(0, m.getRowNNZ(5));
+
+        m.changeEntry(4, 1, 0);
+        assertEquals(1, m.getNonEmptyRows());
+        assertEquals(0, m.getRowNNZ(4));
+        assertEquals(1, m.add(m).getNonEmptyRows());
+        assertEquals(0, m.sub(m).getNonEmptyRows());
+        assertEquals(2, m.transpose().getNonEmptyRows());
+
+        m.makeZero();
+        assertEquals(0, m.getNonEmptyRows());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getRowNNZOutOfBounds() {
+        m.getRowNNZ(0);
+    }
+
     /*
      * Tests from here on out are copied from the grading scripts,
      * for convienence of testing.
@@ -6,14 +6,14 @@
  */
 
 import java.io.*;
-import java.util.Scanner;
-import java.util.ArrayList;
+import java.nio.file.Paths;
 
 public class Sparse {
     public static void main(String args[]) throws IOException {
-        Scanner input = null;
+        TokenReader input = null;
         PrintWriter output = null;
         Matrix A = null, B = null;
+        MatrixBuilder builder = null;
         int dimension, ANonZero, BNonZero;
         int row, column;
         double value;
@@ -25,63 +25,71 @@ public class Sparse {
         }
 
         // Open input
-        input = new Scanner(new File(args[0]));
+        input = new TokenReader(Paths.get(args[0]));
 
         // Read metadata
         dimension = input.nextInt();
         ANonZero = input.nextInt();
         BNonZero = input.nextInt();
 
-        // Initialize the matrices
-        A = new Matrix(dimension);
-        B = new Matrix(dimension);
+        // Collect each matrix's entries and build it in one pass
+        builder = new MatrixBuilder(dimension);
 
         // Read A's non zero entries
         for (int i = 0; i < ANonZero; i++) {
             row = input.nextInt();
             column = input.nextInt();
             value = input.nextDouble();
-            A.changeEntry(row, column, value);
+            builder.add(row, column, value);
         }
+        A = builder.build();
 
         // Read B's non zero entries
+        builder = new MatrixBuilder(dimension);
         for (int i = 0; i < BNonZero; i++) {
             row = input.nextInt();
             column = input.nextInt();
             value = input.nextDouble();
-            B.changeEntry(row, column, value);
+            builder.add(row, column, value);
         }
+        B = builder.build();
 
         input.close();
 
         // Open output
-        output = new PrintWriter(new FileWriter(args[1]));
+        output = new PrintWriter(new BufferedWriter(new FileWriter(args[1])));
 
         // We must print A, B, 1.5*A, A+B, A+A, B-A, A-A, A^T, AB, and B^2
 
         // A
         output.println("A has "+A.getNNZ()+" non-zero entries:");
-        output.println(A.toString());
+        A.writeTo(output);
+        output.println();
 
         // B
         output.println("B has "+B.getNNZ()+" non-zero entries:");
-        output.println(B.toString());
+        B.writeTo(output);
+        output.println();
 
         // 1.5 * A
         output.println("(1.5)*A = ");
-        output.println(A.scalarMult(1.5).toString());
+        A.scalarMult(1.5).writeTo(output);
+        output.println();
 
         // A + B
         output.println("A+B = ");
-        output.println(A.add(B).toString());
+        A.add(B).writeTo(output);
+        output.println();
 
         // A + A
         output.println("A+A = ");
-        output.println(A.add(A).toString());
+        A.add(A).writeTo(output);
+        output.println();
 
         // B - A
         output.println("B-A = ");
-        output.println(B.sub(A).toString());
+        B.sub(A).writeTo(output);
+        output.println();
 
         // A - A (should be empty matrix)
         output.println("A-A = ");
@@ -89,15 +97,18 @@ public class Sparse {
 
         // A^T (transpose)
         output.println("Transpose(A) = ");
-        output.println(A.transpose().toString());
+        A.transpose().writeTo(output);
+        output.println();
 
         // AB
         output.println("A*B = ");
-        output.println(A.mult(B).toString());
+        A.parallelMult(B).writeTo(output);
+        output.println();
 
         // B^2
         output.println("B*B = ");
-        output.println(B.mult(B).toString());
+        B.parallelMult(B).writeTo(output);
+        output.println();
 
         output.close();
     }
@@ -0,0 +1,303 @@
+/*
+ * TokenReader.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Reads whitespace separated numbers straight out of a memory mapped file.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+public class TokenReader implements Closeable {
+    // How much of the file is mapped at once
+    private static final int WINDOW = 1 << 26;
+
+    // Powers of ten that a double holds exactly
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private FileChannel channel;
+    private long size;
+
+    // The mapped part of the file starts at windowStart and holds limit
+    // bytes. pos is the next unread byte, and the last token read spans
+    // [tokenStart, tokenEnd), all relative to windowStart.
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private int limit = 0, pos = 0;
+    private int tokenStart = 0, tokenEnd = 0;
+
+    /*
+     * Opens path for reading
+     */
+    public TokenReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        map(0);
+    }
+
+    /*
+     * Returns true if another token remains
+     */
+    public boolean hasNext() throws IOException {
+        return skipWhitespace();
+    }
+
+    /*
+     * Returns the next token as a String. Meant for the occasional word;
+     * use nextInt() and nextDouble() for numbers.
+     */
+    public String next() throws IOException {
+        nextToken();
+        byte[] token = new byte[tokenEnd - tokenStart];
+        for (int i = 0; i < token.length; i++) {
+            token[i] = window.get(tokenStart + i);
+        }
+        return new String(token, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * Skips the rest of the current line, including its line break
+     */
+    public void skipLine() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                if (window.get(pos++) == '\n') {
+                    return;
+                }
+            }
+            if (!more()) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Returns the next token as an int, without allocating
+     */
+    public int nextInt() throws IOException {
+        nextToken();
+        int i = tokenStart;
+        boolean negative = false;
+        if (window.get(i) == '-' || window.get(i) == '+') {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        if (i == tokenEnd) {
+            throw mismatch();
+        }
+
+        // Accumulate negatively so that Integer.MIN_VALUE fits
+        int value = 0;
+        for (; i < tokenEnd; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+                throw mismatch();
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Integer.MIN_VALUE) {
+                throw mismatch();
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /*
+     * Returns the next token as a double, rounded exactly as
+     * Double.parseDouble would. Plain decimals with up to 15 significant
+     * digits are parsed in place; anything else is handed to the JDK.
+     */
+    public double nextDouble() throws IOException {
+        nextToken();
+        int i = tokenStart;
+        boolean negative = false;
+        if (window.get(i) == '-' || window.get(i) == '+') {
+            negative = window.get(i) == '-';
+            i++;
+        }
+
+        // Collect up to 15 significant digits and note where the point is
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean point = false, any = false;
+        for (; i < tokenEnd; i++) {
+            byte b = window.get(i);
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros are not significant
+                    if (point) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (digits == 15) {
+                    return slowDouble();
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    scale--;
+                }
+            }
+            else if (b == '.' && !point) {
+                point = true;
+            }
+            else if ((b == 'e' || b == 'E') && any) {
+                break;
+            }
+            else {
+                return slowDouble();
+            }
+        }
+        if (!any) {
+            return slowDouble();
+        }
+
+        // Optional exponent
+        if (i < tokenEnd) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < tokenEnd && (window.get(i) == '-' || window.get(i) == '+')) {
+                negativeExponent = window.get(i) == '-';
+                i++;
+            }
+            if (i == tokenEnd || tokenEnd - i > 3) {
+                return slowDouble();
+            }
+            int exponent = 0;
+            for (; i < tokenEnd; i++) {
+                int digit = window.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw mismatch();
+                }
+                exponent = exponent * 10 + digit;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        // With the mantissa below 2^53 and 10^|scale| exact, one multiply or
+        // divide is correctly rounded, which is what parseDouble guarantees
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        }
+        else if (scale >= 0 && scale < POW10.length) {
+            value = mantissa * POW10[scale];
+        }
+        else if (scale < 0 && -scale < POW10.length) {
+            value = mantissa / POW10[-scale];
+        }
+        else {
+            return slowDouble();
+        }
+        return negative ? -value : value;
+    }
+
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /*
+     * Parses the current token with Double.parseDouble.
+     */
+    private double slowDouble() {
+        char[] token = new char[tokenEnd - tokenStart];
+        for (int i = 0; i < token.length; i++) {
+            token[i] = (char) (window.get(tokenStart + i) & 0xff);
+        }
+        try {
+            return Double.parseDouble(new String(token));
+        }
+        catch (NumberFormatException e) {
+            throw mismatch();
+        }
+    }
+
+    private InputMismatchException mismatch() {
+        return new InputMismatchException("TokenReader: malformed number at byte "
+                + (windowStart + tokenStart));
+    }
+
+    /*
+     * Marks the next token as [tokenStart, tokenEnd) and moves past it,
+     * sliding the window forward so the whole token is mapped.
+     */
+    private void nextToken() throws IOException {
+        if (!skipWhitespace()) {
+            throw new NoSuchElementException("TokenReader: no more tokens");
+        }
+        int end = pos;
+        while (true) {
+            while (end < limit && (window.get(end) & 0xff) > ' ') {
+                end++;
+            }
+            if (end < limit || windowStart + limit == size) {
+                break;
+            }
+
+            // The token runs off the window; remap starting at the token
+            if (pos == 0) {
+                throw new InputMismatchException("TokenReader: token longer than "
+                        + WINDOW + " bytes");
+            }
+            int offset = end - pos;
+            if (!more()) {
+                break;
+            }
+            end = pos + offset;
+        }
+        tokenStart = pos;
+        tokenEnd = end;
+        pos = end;
+    }
+
+    /*
+     * Moves pos to the next token. Returns false at the end of the file.
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            while (pos < limit && (window.get(pos) & 0xff) <= ' ') {
+                pos++;
+            }
+            if (pos < limit) {
+                return true;
+            }
+            if (!more()) {
+                return false;
+            }
+        }
+    }
+
+    /*
+     * Maps the next window so that it starts at pos.
+     * Returns false if the window already reaches the end of the file.
+     */
+    private boolean more() throws IOException {
+        if (windowStart + limit >= size) {
+            return false;
+        }
+        map(windowStart + pos);
+        return true;
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        limit = (int) Math.min(WINDOW, size - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, limit);
+        pos = 0;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * TokenReaderTest.java
+ * Author: Spencer Peterson
+ * cruzid: spjpeter
+ * Unit tests for TokenReader.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+public class TokenReaderTest {
+    // Opens a reader over a temporary file holding text
+    TokenReader open(String text) throws IOException {
+        Path path = Files.createTempFile("TokenReaderTest", ".txt");
+        path.toFile().deleteOnExit();
+        Files.write(path, text.getBytes("US-ASCII"));
+        return new TokenReader(path);
+    }
+
+    @Test
+    public void ints() throws IOException {
+        TokenReader in = open("3 -12\n+7\t2147483647 -2147483648\r\n");
+        assertEquals(3, in.nextInt());
+        assertEquals(-12, in.nextInt());
+        assertEquals(7, in.nextInt());
+        assertEquals(Integer.MAX_VALUE, in.nextInt());
+        assertEquals(Integer.MIN_VALUE, in.nextInt());
+        assertFalse(in.hasNext());
+        in.close();
+    }
+
+    @Test
+    public void doubles() throws IOException {
+        String tokens[] = {"1.5", "-0.001", "7", "1e8", "1.0E-4", "2.5e+3",
+            "0.30000000000000004", "123456789.123456789", "-0", "NaN"};
+        TokenReader in = open(String.join(" ", tokens));
+        for (String token : tokens) {
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(token)),
+                    Double.doubleToLongBits(in.nextDouble()));
+        }
+        in.close();
+    }
+
+    @Test
+    public void wordsAndLines() throws IOException {
+        TokenReader in = open("%%Header word\n% comment\n4 5\n");
+        assertEquals("%%Header", in.next());
+        in.skipLine();
+        assertTrue(in.hasNext());
+        in.skipLine();
+        assertEquals(4, in.nextInt());
+        assertEquals(5, in.nextInt());
+        in.close();
+    }
+
+    @Test(expected = InputMismatchException.class)
+    public void intOverflow() throws IOException {
+        open("2147483648").nextInt();
+    }
+
+    @Test(expected = InputMismatchException.class)
+    public void notANumber() throws IOException {
+        open("1.5x").nextDouble();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void pastTheEnd() throws IOException {
+        TokenReader in = open("1 \n");
+        in.nextInt();
+        in.nextInt();
+    }
+}